@@ -0,0 +1,95 @@
+package game2d.engine;
+
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+import javax.swing.UIManager;
+
+/**
+ * Active {@link Display} which draws and presents synchronously from the
+ * {@link Timer} thread
+ * <p>
+ * Uses a page flipping {@link BufferStrategy} if the platform supports one,
+ * otherwise a blitting strategy backed by a
+ * {@link java.awt.image.VolatileImage}. Repaint requests from the window system
+ * are ignored since the next frame redraws everything anyway
+ * 
+ * @author Gareth Kmet
+ */
+public class ActiveGraphics extends Canvas implements Display {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int BUFFERS = 2;
+
+	private final Renderer renderer;
+
+	private volatile BufferStrategy strategy;
+
+	public ActiveGraphics(Settings settings, RenderBuffer renderBuffer, TickMetrics metrics) {
+		super();
+		this.renderer = new Renderer(settings, renderBuffer, metrics);
+		setIgnoreRepaint(true);
+		setBackground(UIManager.getColor("Panel.background"));
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		try {
+			createBufferStrategy(BUFFERS, new BufferCapabilities(new ImageCapabilities(true),
+					new ImageCapabilities(true), BufferCapabilities.FlipContents.UNDEFINED));
+		} catch (AWTException e) {
+			createBufferStrategy(BUFFERS);
+		}
+		strategy = getBufferStrategy();
+	}
+
+	@Override
+	public void removeNotify() {
+		strategy = null;
+		super.removeNotify();
+	}
+
+	@Override
+	public void cycle(double alpha) {
+		BufferStrategy strategy = this.strategy;
+		int width = getWidth(), height = getHeight();
+		if (strategy == null || width <= 0 || height <= 0) return;
+
+		do {
+			do {
+				Graphics2D g2 = (Graphics2D) strategy.getDrawGraphics();
+				try {
+					g2.setColor(getBackground());
+					g2.fillRect(0, 0, width, height);
+					renderer.render(g2, width, height, alpha);
+				} finally {
+					g2.dispose();
+				}
+			} while (strategy.contentsRestored());
+			strategy.show();
+		} while (strategy.contentsLost());
+
+		Toolkit.getDefaultToolkit().sync();
+	}
+
+	@Override
+	public Component component() {
+		return this;
+	}
+
+	@Override
+	public void destroy() {
+		BufferStrategy strategy = this.strategy;
+		if (strategy != null) { strategy.dispose(); }
+		renderer.destroy();
+	}
+
+}
@@ -0,0 +1,170 @@
+package game2d.engine;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+import game2d.utils.Unit.Distance;
+
+/**
+ * An immutable view of the world as it was on one cycle
+ * <p>
+ * The logic builds a camera from {@link Settings#screenRot},
+ * {@link Settings#screenXOffset}, {@link Settings#screenYOffset} and
+ * {@link Settings#metreDefinition} and publishes it with each
+ * {@link RenderBuffer.Frame}, so that the settings are only read by the
+ * thread which cycles the logic. The camera is rebuilt only when one of those
+ * settings or the size of the surface changes, so an unchanged camera is the
+ * same object from one cycle to the next. The transform onto the surface, its
+ * inverse and the part of the world in view are found once when the camera is
+ * built and are shared by drawing, culling and picking
+ *
+ * @author Gareth Kmet
+ */
+public final class Camera {
+
+	private final double rot;
+	private final float xOffset, yOffset;
+	private final int metreDefinition;
+	private final int width, height;
+
+	private final AffineTransform transform;
+	private final AffineTransform inverse;
+	private final Rectangle2D view;
+
+	/**
+	 * A camera of the current settings
+	 *
+	 * @param width
+	 *                   the width of the surface drawn onto
+	 * @param height
+	 *                   the height of the surface drawn onto
+	 */
+	Camera(Settings settings, int width, int height) {
+		this(settings.screenRot.rot(), settings.screenXOffset, settings.screenYOffset, settings.metreDefinition,
+				width, height);
+	}
+
+	private Camera(double rot, float xOffset, float yOffset, int metreDefinition, int width, int height) {
+		this.rot = rot;
+		this.xOffset = xOffset;
+		this.yOffset = yOffset;
+		this.metreDefinition = metreDefinition;
+		this.width = width;
+		this.height = height;
+
+		double w = width, h = height;
+		double pixels = Distance.convert(Distance.METRE, Distance.PIXEL, metreDefinition);
+		this.transform = AffineTransform.getRotateInstance(rot, w / 2, h / 2);
+		transform.translate(w / 2 + pixels * xOffset, h / 2 + pixels * yOffset);
+		transform.scale(metreDefinition, metreDefinition);
+
+		AffineTransform inverse;
+		try {
+			inverse = transform.createInverse();
+		} catch (NoninvertibleTransformException e) {
+			inverse = null;
+		}
+		this.inverse = inverse;
+		this.view = inverse == null ? null
+				: inverse.createTransformedShape(new Rectangle2D.Double(0, 0, w, h)).getBounds2D();
+	}
+
+	/**
+	 * @return if this camera shows the world as the settings would on a surface
+	 *         of the size
+	 */
+	boolean matches(Settings settings, int width, int height) {
+		return rot == settings.screenRot.rot() && xOffset == settings.screenXOffset
+				&& yOffset == settings.screenYOffset && metreDefinition == settings.metreDefinition
+				&& this.width == width && this.height == height;
+	}
+
+	/**
+	 * @return this camera on a surface of another size
+	 */
+	Camera resize(int width, int height) {
+		if (this.width == width && this.height == height) return this;
+		return new Camera(rot, xOffset, yOffset, metreDefinition, width, height);
+	}
+
+	/**
+	 * @return the transform mapping metres onto the surface, which must not be
+	 *         modified
+	 */
+	AffineTransform transform() {
+		return transform;
+	}
+
+	/**
+	 * @return the transform mapping the surface onto metres, which must not be
+	 *         modified, or null if there is none
+	 */
+	AffineTransform inverse() {
+		return inverse;
+	}
+
+	/**
+	 * @return the bounds of the part of the world in view, in metres, which must
+	 *         not be modified, or null if they could not be found
+	 */
+	Rectangle2D view() {
+		return view;
+	}
+
+	/**
+	 * @return a copy of the transform mapping metres onto the surface
+	 */
+	public AffineTransform getTransform() {
+		return new AffineTransform(transform);
+	}
+
+	/**
+	 * @return a copy of the bounds of the part of the world in view, in metres,
+	 *         or null if they could not be found
+	 */
+	public Rectangle2D getView() {
+		return view == null ? null : (Rectangle2D) view.clone();
+	}
+
+	/**
+	 * Finds the point in the world under a point of the surface, for picking
+	 *
+	 * @param  screen
+	 *                    a point on the surface, in pixels
+	 * @param  dst
+	 *                    the point to write the result into, or null
+	 *
+	 * @return        the point in metres, or null if the camera can not be
+	 *                inverted
+	 */
+	public Point2D toWorld(Point2D screen, Point2D dst) {
+		return inverse == null ? null : inverse.transform(screen, dst);
+	}
+
+	/**
+	 * @param  world
+	 *                   a point in metres
+	 * @param  dst
+	 *                   the point to write the result into, or null
+	 *
+	 * @return       the point on the surface, in pixels
+	 */
+	public Point2D toScreen(Point2D world, Point2D dst) {
+		return transform.transform(world, dst);
+	}
+
+	public double getRotation() { return rot; }
+
+	public float getXOffset() { return xOffset; }
+
+	public float getYOffset() { return yOffset; }
+
+	public int getMetreDefinition() { return metreDefinition; }
+
+	public int getWidth() { return width; }
+
+	public int getHeight() { return height; }
+
+}
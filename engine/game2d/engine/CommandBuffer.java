@@ -0,0 +1,145 @@
+package game2d.engine;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+import game2d.objects.GameObject;
+import game2d.sprites.GameSprite;
+
+/**
+ * Reusable buffer of what objects wish to affect the game after completing
+ * their cycle
+ * <p>
+ * Owned by the {@link Logic}, which hands the same buffers to the objects on
+ * every cycle and clears them once their commands are applied, so a cycle
+ * which spawns nothing allocates nothing. Replaces the {@link CycleReturn}
+ * returned by {@link GameObject#cycle(Settings)}, which is still accepted
+ * through {@link #add(CycleReturn)}.
+ * 
+ * @author Gareth Kmet
+ */
+public final class CommandBuffer {
+
+	private boolean endgame = false;
+
+	private GameObject[] spawns = new GameObject[8];
+	private int spawnsSize = 0;
+
+	private GameSprite[] statics = new GameSprite[8];
+	private int staticsSize = 0;
+
+	private int[] wakes = new int[8];
+	private int wakesSize = 0;
+
+	private final CycleRandom random = new CycleRandom(0);
+
+	/**
+	 * Ends the game after this cycle
+	 */
+	public void endGame() {
+		endgame = true;
+	}
+
+	/**
+	 * Adds an object to the game at the end of this cycle. Its sprite will then
+	 * act on and be visible in the physics and draw call directly after this
+	 * cycle
+	 * 
+	 * @param o
+	 */
+	public void spawn(GameObject o) {
+		if (spawnsSize == spawns.length) { spawns = Arrays.copyOf(spawns, spawnsSize * 2); }
+		spawns[spawnsSize++] = o;
+	}
+
+	/**
+	 * Adds a static sprite to the game at the end of this cycle. It will then be
+	 * visible on the draw call directly after this cycle
+	 * 
+	 * @param s
+	 */
+	public void addStatic(GameSprite s) {
+		if (staticsSize == statics.length) { statics = Arrays.copyOf(statics, staticsSize * 2); }
+		statics[staticsSize++] = s;
+	}
+
+	/**
+	 * Wakes a sleeping object at the start of the next cycle
+	 * 
+	 * @param handle
+	 *                   the id of the object
+	 */
+	public void wake(int handle) {
+		if (wakesSize == wakes.length) { wakes = Arrays.copyOf(wakes, wakesSize * 2); }
+		wakes[wakesSize++] = handle;
+	}
+
+	/**
+	 * Objects which only take randomness from here behave the same when a
+	 * recording of the game is replayed
+	 * 
+	 * @return a generator seeded by the logic at the start of each cycle, the
+	 *         same one on every cycle
+	 */
+	public RandomGenerator random() {
+		return random;
+	}
+
+	/**
+	 * Restarts {@link #random()} from a seed
+	 */
+	void seed(long seed) {
+		random.seed(seed);
+	}
+
+	/**
+	 * Adds the contents of a {@link CycleReturn}
+	 * 
+	 * @param c
+	 */
+	public void add(CycleReturn c) {
+		if (c.endgame()) endGame();
+		for (GameObject o : c.addObjects()) { spawn(o); }
+		for (GameSprite s : c.addStatics()) { addStatic(s); }
+	}
+
+	boolean endgame() {
+		return endgame;
+	}
+
+	int spawns() {
+		return spawnsSize;
+	}
+
+	GameObject spawn(int i) {
+		return spawns[i];
+	}
+
+	int statics() {
+		return staticsSize;
+	}
+
+	GameSprite staticSprite(int i) {
+		return statics[i];
+	}
+
+	int wakes() {
+		return wakesSize;
+	}
+
+	int wakeHandle(int i) {
+		return wakes[i];
+	}
+
+	/**
+	 * Removes every command, keeping the buffers for the next cycle. The
+	 * generator carries on
+	 */
+	void clear() {
+		endgame = false;
+		Arrays.fill(spawns, 0, spawnsSize, null);
+		Arrays.fill(statics, 0, staticsSize, null);
+		spawnsSize = staticsSize = wakesSize = 0;
+	}
+
+}
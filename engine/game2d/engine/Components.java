@@ -0,0 +1,245 @@
+package game2d.engine;
+
+import java.util.Arrays;
+
+import game2d.sprites.GameSprite;
+import game2d.utils.Unit;
+
+/**
+ * Struct-of-arrays storage of the state of entity objects
+ * <p>
+ * Each attached object owns one row of a set of parallel primitive arrays,
+ * found through the {@link Handles#index(int)} of its id. Rows are kept dense
+ * with the rows of awake objects first and the rows of sleeping objects after
+ * them, so the {@link Systems} can walk the awake rows linearly.
+ * 
+ * @author Gareth Kmet
+ */
+public final class Components {
+
+	private static final int ABSENT = -1;
+
+	/**
+	 * The row of each object indexed by the handle index of its id, or
+	 * {@link #ABSENT}
+	 */
+	private int[] rows = new int[64];
+
+	/**
+	 * The id of the object owning each row
+	 */
+	int[] entities = new int[64];
+
+	@Unit.Measurement(unit = Unit.METRE)
+	float[] x = new float[64], y = new float[64];
+	@Unit.Measurement(unit = Unit.METRE_SECOND_VELOCITY)
+	float[] vx = new float[64], vy = new float[64];
+	@Unit.Measurement(unit = Unit.RADIAN)
+	float[] rot = new float[64];
+	@Unit.Measurement(unit = Unit.RADIAN)
+	float[] omega = new float[64];
+	@Logic.AliveState
+	int[] state = new int[64];
+	GameSprite[] sprites = new GameSprite[64];
+
+	/**
+	 * The inverse of the mass of each row, zero for a row which can not be
+	 * pushed
+	 */
+	float[] invMass = new float[64];
+
+	/**
+	 * The number of cycles the physics has found each row at rest for
+	 */
+	int[] rest = new int[64];
+
+	/**
+	 * The number of rows, and the number of rows belonging to awake objects
+	 */
+	int size = 0, awake = 0;
+
+	Components() {
+		Arrays.fill(rows, ABSENT);
+	}
+
+	/**
+	 * Gives an object a zeroed row
+	 * 
+	 * @param  handle
+	 *                    the id of the object
+	 * 
+	 * @return        false if the object already has a row
+	 */
+	boolean attach(int handle) {
+		int index = Handles.index(handle);
+		if (index >= rows.length) {
+			int length = rows.length;
+			rows = Arrays.copyOf(rows, Math.max(index + 1, length * 2));
+			Arrays.fill(rows, length, rows.length, ABSENT);
+		} else if (rows[index] != ABSENT) { return false; }
+
+		if (size == entities.length) grow();
+		int row = size++;
+		entities[row] = handle;
+		x[row] = y[row] = vx[row] = vy[row] = rot[row] = omega[row] = 0;
+		state[row] = 0;
+		sprites[row] = null;
+		invMass[row] = 1;
+		rest[row] = 0;
+		rows[index] = row;
+
+		swap(row, awake++);
+		return true;
+	}
+
+	/**
+	 * Removes the row of an object
+	 * 
+	 * @param  handle
+	 *                    the id of the object
+	 * 
+	 * @return        false if the object had no row
+	 */
+	boolean detach(int handle) {
+		int row = row(handle);
+		if (row == ABSENT) return false;
+
+		if (row < awake) {
+			swap(row, --awake);
+			row = awake;
+		}
+		swap(row, --size);
+		rows[Handles.index(handle)] = ABSENT;
+		sprites[size] = null;
+		return true;
+	}
+
+	/**
+	 * Moves the row of an object after the awake rows
+	 */
+	void sleep(int handle) {
+		int row = row(handle);
+		if (row != ABSENT && row < awake) swap(row, --awake);
+	}
+
+	/**
+	 * Moves the row of an object back into the awake rows
+	 */
+	void wake(int handle) {
+		int row = row(handle);
+		if (row != ABSENT && row >= awake) swap(row, awake++);
+	}
+
+	private void swap(int a, int b) {
+		if (a == b) return;
+		int e = entities[a];
+		entities[a] = entities[b];
+		entities[b] = e;
+		rows[Handles.index(entities[a])] = a;
+		rows[Handles.index(entities[b])] = b;
+
+		float f;
+		f = x[a]; x[a] = x[b]; x[b] = f;
+		f = y[a]; y[a] = y[b]; y[b] = f;
+		f = vx[a]; vx[a] = vx[b]; vx[b] = f;
+		f = vy[a]; vy[a] = vy[b]; vy[b] = f;
+		f = rot[a]; rot[a] = rot[b]; rot[b] = f;
+		f = omega[a]; omega[a] = omega[b]; omega[b] = f;
+		f = invMass[a]; invMass[a] = invMass[b]; invMass[b] = f;
+
+		int s = state[a];
+		state[a] = state[b];
+		state[b] = s;
+		s = rest[a];
+		rest[a] = rest[b];
+		rest[b] = s;
+
+		GameSprite g = sprites[a];
+		sprites[a] = sprites[b];
+		sprites[b] = g;
+	}
+
+	private void grow() {
+		int length = entities.length * 2;
+		entities = Arrays.copyOf(entities, length);
+		x = Arrays.copyOf(x, length);
+		y = Arrays.copyOf(y, length);
+		vx = Arrays.copyOf(vx, length);
+		vy = Arrays.copyOf(vy, length);
+		rot = Arrays.copyOf(rot, length);
+		omega = Arrays.copyOf(omega, length);
+		state = Arrays.copyOf(state, length);
+		sprites = Arrays.copyOf(sprites, length);
+		invMass = Arrays.copyOf(invMass, length);
+		rest = Arrays.copyOf(rest, length);
+	}
+
+	/**
+	 * @param  handle
+	 *                    the id of an object
+	 * 
+	 * @return        the row of the object, or -1 if it has none
+	 */
+	public int row(int handle) {
+		int index = Handles.index(handle);
+		if (index >= rows.length) return ABSENT;
+		int row = rows[index];
+		return row != ABSENT && entities[row] == handle ? row : ABSENT;
+	}
+
+	public boolean contains(int handle) {
+		return row(handle) != ABSENT;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	public float getX(int row) { return x[row]; }
+
+	public float getY(int row) { return y[row]; }
+
+	public float getVelocityX(int row) { return vx[row]; }
+
+	public float getVelocityY(int row) { return vy[row]; }
+
+	public float getRotation(int row) { return rot[row]; }
+
+	public float getAngularVelocity(int row) { return omega[row]; }
+
+	public @Logic.AliveState int getAliveState(int row) { return state[row]; }
+
+	public GameSprite getSprite(int row) { return sprites[row]; }
+
+	public float getInverseMass(int row) { return invMass[row]; }
+
+	public void setPosition(int row, float x, float y) {
+		this.x[row] = x;
+		this.y[row] = y;
+	}
+
+	public void setVelocity(int row, float vx, float vy) {
+		this.vx[row] = vx;
+		this.vy[row] = vy;
+	}
+
+	public void setRotation(int row, float rot) { this.rot[row] = rot; }
+
+	public void setAngularVelocity(int row, float omega) { this.omega[row] = omega; }
+
+	public void setAliveState(int row, @Logic.AliveState int state) { this.state[row] = state; }
+
+	public void setSprite(int row, GameSprite sprite) { this.sprites[row] = sprite; }
+
+	/**
+	 * @param row
+	 * @param invMass
+	 *                    the inverse of the mass, or zero for a row which can
+	 *                    not be pushed
+	 */
+	public void setInverseMass(int row, float invMass) { this.invMass[row] = invMass; }
+
+}
@@ -0,0 +1,47 @@
+package game2d.engine;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generator handed out by {@link CommandBuffer#random()}, which can be
+ * restarted from a seed in place so that a cycle does not allocate a new one
+ * <p>
+ * Draws the same numbers as a {@link SplittableRandom} created with the same
+ * seed, so recordings made with one replay with the other
+ *
+ * @author Gareth Kmet
+ */
+final class CycleRandom implements RandomGenerator {
+
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long seed;
+
+	CycleRandom(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Restarts the generator from a seed
+	 */
+	void seed(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public long nextLong() {
+		long z = seed += GAMMA;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public int nextInt() {
+		long z = seed += GAMMA;
+		z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+		return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+	}
+
+}
@@ -8,6 +8,9 @@ import game2d.sprites.GameSprite;
 /**
  * Represents the data the an object wishes to affect the game after completing
  * its cycle
+ * <p>
+ * Kept for objects which override {@link game2d.objects.GameObject#cycle(Settings)},
+ * the logic copies it into a {@link CommandBuffer}
  * 
  * @param  endgame
  *                    if the game should be ended after this cycle
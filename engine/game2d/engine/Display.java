@@ -0,0 +1,28 @@
+package game2d.engine;
+
+import java.awt.Component;
+
+/**
+ * A surface the game is drawn onto once per frame
+ * 
+ * @author Gareth Kmet
+ */
+public interface Display {
+
+	/**
+	 * Called by the {@link Timer} once per frame
+	 * 
+	 * @param alpha
+	 *                  the interpolation factor between the previous and the
+	 *                  current transform of the active sprites
+	 */
+	public void cycle(double alpha);
+
+	/**
+	 * @return the component to add to the window
+	 */
+	public Component component();
+
+	public void destroy();
+
+}
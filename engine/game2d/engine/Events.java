@@ -0,0 +1,125 @@
+package game2d.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the engine, so that slow cycles and frames
+ * can be lined up with GC and safepoint pauses in one recording
+ * <p>
+ * Each event is only recorded if it takes longer than its threshold, which a
+ * recording may override with the <code>threshold</code> setting of the event
+ * name. Each event is kept in a field of the code it times and reused, and
+ * is only begun while {@link Event#isEnabled()}, so no event is allocated
+ * per cycle or frame
+ * 
+ * @author Gareth Kmet
+ */
+final class Events {
+
+	private Events() {}
+
+	@Name("game2d.Frame")
+	@Label("Frame")
+	@Description("One iteration of the timer: the cycles it ran and the render")
+	@Category("Game2D")
+	@Threshold("20 ms")
+	@StackTrace(false)
+	static final class Frame extends Event {
+		@Label("Cycles")
+		int cycles;
+
+		@Label("Alpha")
+		@Description("The interpolation factor the frame was rendered with")
+		double alpha;
+
+		@Label("Dropped")
+		@Description("If the timer fell too far behind and dropped its backlog")
+		boolean dropped;
+
+		@Label("Tick")
+		@Description("The last logic cycle run")
+		long tick;
+
+		@Label("Awake Objects")
+		int awake;
+
+		@Label("Sleeping Objects")
+		int sleeping;
+	}
+
+	@Name("game2d.LogicCycle")
+	@Label("Logic Cycle")
+	@Category("Game2D")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class LogicCycle extends Event {
+		@Label("Tick")
+		long tick;
+
+		@Label("Objects")
+		int objects;
+
+		@Label("Active Sprites")
+		int activeSprites;
+
+		@Label("Static Sprites")
+		int staticSprites;
+
+		@Label("Spawns")
+		int spawns;
+	}
+
+	@Name("game2d.PhysicsCycle")
+	@Label("Physics Cycle")
+	@Category("Game2D")
+	@Threshold("10 ms")
+	@StackTrace(false)
+	static final class PhysicsCycle extends Event {
+		@Label("Tick")
+		long tick;
+
+		@Label("Bodies")
+		int bodies;
+
+		@Label("Pairs")
+		int pairs;
+
+		@Label("Contacts")
+		int contacts;
+
+		@Label("Islands")
+		int islands;
+	}
+
+	@Name("game2d.Paint")
+	@Label("Paint")
+	@Description("Drawing one frame onto a display")
+	@Category("Game2D")
+	@Threshold("16 ms")
+	@StackTrace(false)
+	static final class Paint extends Event {
+		@Label("Tick")
+		@Description("The logic cycle the frame was produced on")
+		long tick;
+
+		@Label("Active Sprites")
+		int activeSprites;
+
+		@Label("Drawn Sprites")
+		@Description("The active sprites left after culling")
+		int drawnSprites;
+
+		@Label("Static Sprites")
+		int staticSprites;
+
+		@Label("Quality")
+		String quality;
+	}
+
+}
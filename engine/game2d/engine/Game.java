@@ -6,6 +6,8 @@ import java.awt.EventQueue;
 import java.awt.Rectangle;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.IOException;
+import java.nio.file.Path;
 
 import javax.swing.JFrame;
 
@@ -13,7 +15,7 @@ import game2d.engine.Logic.LogicCycleResults;
 import game2d.sprites.GameSprite;
 import game2d.sprites.ShapeSprite;
 
-public class Game extends JFrame {
+public class Game extends JFrame implements Simulation {
 
 	private Thread animator;
 
@@ -21,24 +23,39 @@ public class Game extends JFrame {
 	private Timer timer;
 	private Logic logic;
 	private Physics physics;
-	private Graphics graphics;
+	private Display display;
+	private TickMetrics metrics;
+	private TickRecorder recorder;
+	private volatile Path snapshotRequest;
+	private WorldSnapshot.Writer snapshot;
 
 	public Game() {
 		super();
 
 		this.settings = new Settings();
-		this.graphics = new Graphics(this, settings);
-		this.timer = new Timer(this, settings.timePerCycle);
+		this.metrics = new TickMetrics();
 		this.logic = new Logic(settings);
-		this.physics = new Physics(settings);
+		this.display = settings.activeRendering ? new ActiveGraphics(settings, logic.renderBuffer(), metrics)
+				: new Graphics(settings, logic.renderBuffer(), metrics);
+		this.timer = new Timer(this, settings, metrics);
+		this.physics = new Physics(settings, logic);
 
 		initUI();
+		if (settings.jmxMetrics) metrics.register();
+		if (settings.recordPath != null) {
+			try {
+				this.recorder = new TickRecorder(Path.of(settings.recordPath), settings);
+				logic.setRecorder(recorder);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 
 		this.animator = new Thread(timer);
 	}
 
 	private void initUI() {
-		add(this.graphics);
+		add(this.display.component());
 		setResizable(true);
 		pack();
 
@@ -82,10 +99,60 @@ public class Game extends JFrame {
 		this.animator.start();
 	}
 
+	@Override
 	public boolean cycle() {
+		long start = System.nanoTime();
 		LogicCycleResults logicresults = logic.cycle();
-		graphics.cycle(logicresults.staticSprites(), logicresults.activeSprites());
-		return true;
+		long logicEnd = System.nanoTime();
+		physics.cycle();
+		metrics.record(TickMetrics.Phase.LOGIC, logicEnd - start);
+		metrics.record(TickMetrics.Phase.PHYSICS, System.nanoTime() - logicEnd);
+		metrics.tick(logicresults);
+		if (recorder != null) {
+			recorder.tick(logic.cycles(), logic.seed(), logicresults.objects(), System.nanoTime() - start);
+		}
+		snapshot();
+		return !logicresults.endgame();
+	}
+
+	/**
+	 * Saves the world to a file, captured between the next two cycles and
+	 * written over the cycles after, {@link Settings#snapshotBytesPerCycle} at a
+	 * time. May be called from any thread
+	 */
+	public void snapshot(Path path) {
+		this.snapshotRequest = path;
+	}
+
+	private void snapshot() {
+		try {
+			Path path = snapshotRequest;
+			if (path != null && snapshot == null) {
+				snapshotRequest = null;
+				snapshot = WorldSnapshot.capture(logic, settings, path);
+			}
+			if (snapshot != null && snapshot.step(settings.snapshotBytesPerCycle)) {
+				snapshot.close();
+				snapshot = null;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (snapshot != null) snapshot.abort();
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * @return the camera of the latest cycle, for turning points on the surface
+	 *         into points in the world. May be called from any thread
+	 */
+	public Camera getCamera() {
+		return logic.renderBuffer().camera();
+	}
+
+	@Override
+	public void render(double alpha) {
+		display.cycle(alpha);
 	}
 
 	private void destroy() {
@@ -95,8 +162,24 @@ public class Game extends JFrame {
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
-		graphics.destroy();
+		display.destroy();
+		physics.destroy();
 		logic.destroy();
+		metrics.unregister();
+		if (snapshot != null) {
+			try {
+				snapshot.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (recorder != null) {
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	public static void main(String args[]) {
@@ -0,0 +1,146 @@
+package game2d.engine;
+
+import java.util.Arrays;
+
+/**
+ * Allocates 32-bit object handles made of a slot index and a generation
+ * <p>
+ * The lower {@link #INDEX_BITS} bits of a handle are an index which is reused
+ * once the handle is released, so the indices stay compact for any number of
+ * allocations. The upper bits are the generation of the index, which is
+ * incremented on every release so that a stale handle to a reused index can be
+ * detected in constant time.
+ * <p>
+ * No handle is ever equal to {@link #NULL}
+ * 
+ * @author Gareth Kmet
+ */
+public final class Handles {
+
+	public static final int NULL = 0;
+
+	public static final int INDEX_BITS = 20, GENERATION_BITS = 32 - INDEX_BITS;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1, GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+
+	/**
+	 * The current generation of each index, indices which have never been
+	 * allocated have a generation of zero
+	 */
+	private int[] generations = new int[64];
+
+	/**
+	 * Stack of released indices
+	 */
+	private int[] free = new int[64];
+	private int freeSize = 0;
+
+	/**
+	 * The next index which has never been allocated
+	 */
+	private int next = 0;
+
+	/**
+	 * @return a new live handle
+	 * 
+	 * @throws IllegalStateException
+	 *                                   if every index is in use
+	 */
+	public int allocate() {
+		int index;
+		if (freeSize > 0) {
+			index = free[--freeSize];
+		} else {
+			if (next > INDEX_MASK) throw new IllegalStateException("No free handles");
+			index = next++;
+			if (index == generations.length) { generations = Arrays.copyOf(generations, index * 2); }
+			generations[index] = 1;
+		}
+		return generations[index] << INDEX_BITS | index;
+	}
+
+	/**
+	 * Invalidates a handle and allows its index to be reused
+	 * 
+	 * @param  handle
+	 * 
+	 * @return        false if the handle was not alive
+	 */
+	public boolean release(int handle) {
+		if (!isAlive(handle)) return false;
+		int index = index(handle);
+		int generation = (generations[index] + 1) & GENERATION_MASK;
+		generations[index] = generation == 0 ? 1 : generation;
+
+		if (freeSize == free.length) { free = Arrays.copyOf(free, freeSize * 2); }
+		free[freeSize++] = index;
+		return true;
+	}
+
+	/**
+	 * @param  handle
+	 * 
+	 * @return        if the handle has been allocated and not yet released
+	 */
+	public boolean isAlive(int handle) {
+		int index = index(handle);
+		return handle != NULL && index < next && generations[index] == generation(handle);
+	}
+
+	/**
+	 * @return one more than the largest index that has been allocated
+	 */
+	public int capacity() {
+		return next;
+	}
+
+	/**
+	 * @return the number of live handles
+	 */
+	public int size() {
+		return next - freeSize;
+	}
+
+	/**
+	 * Copies the generations of every index which has been allocated, then the
+	 * stack of released indices
+	 * 
+	 * @param  dst
+	 *                 an array of at least {@link #capacity()} plus the number
+	 *                 of released indices
+	 * 
+	 * @return     the number of released indices
+	 */
+	int save(int[] dst) {
+		System.arraycopy(generations, 0, dst, 0, next);
+		System.arraycopy(free, 0, dst, next, freeSize);
+		return freeSize;
+	}
+
+	/**
+	 * @return the number of released indices waiting to be reused
+	 */
+	int released() {
+		return freeSize;
+	}
+
+	/**
+	 * Replaces every handle with those saved by {@link #save(int[])}
+	 */
+	void restore(int[] src, int capacity, int released) {
+		generations = new int[Math.max(64, capacity)];
+		System.arraycopy(src, 0, generations, 0, capacity);
+		free = new int[Math.max(64, released)];
+		System.arraycopy(src, capacity, free, 0, released);
+		next = capacity;
+		freeSize = released;
+	}
+
+	public static int index(int handle) {
+		return handle & INDEX_MASK;
+	}
+
+	public static int generation(int handle) {
+		return handle >>> INDEX_BITS;
+	}
+
+}
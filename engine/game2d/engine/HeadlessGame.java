@@ -0,0 +1,312 @@
+package game2d.engine;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import game2d.engine.Logic.LogicCycleResults;
+import game2d.objects.GameObject;
+import game2d.sprites.GameSprite;
+import game2d.sprites.ShapeSprite;
+
+/**
+ * Runs the logic and physics without a window, for servers, tests and
+ * benchmarks
+ * <p>
+ * The game can either be paced in real time by a {@link Timer} on its own
+ * thread with {@link #start()}, or stepped as fast as possible on the calling
+ * thread with {@link #step(int)}. If given a size, each frame is drawn into an
+ * offscreen image by the same {@link Renderer} the windowed displays use.
+ * Nothing here touches AWT windowing, so many games may run in one process
+ * with <code>java.awt.headless=true</code>, or be run together on a shared
+ * pool by a {@link WorldScheduler}
+ *
+ * @author Gareth Kmet
+ */
+public class HeadlessGame implements Simulation {
+
+	private final Settings settings;
+	private final Logic logic;
+	private final Physics physics;
+	private final Timer timer;
+	private final TickMetrics metrics = new TickMetrics();
+	private TickRecorder recorder;
+	private volatile Path snapshotRequest;
+	private WorldSnapshot.Writer snapshot;
+	private Thread animator;
+
+	private final Renderer renderer;
+	private final BufferedImage image;
+
+	private long cycles = 0;
+	private boolean ended = false;
+
+	/**
+	 * A game which does not draw its frames
+	 */
+	public HeadlessGame(Settings settings) {
+		this(settings, 0, 0);
+	}
+
+	/**
+	 * @param width
+	 *                   the width of the image frames are drawn into, or 0 to
+	 *                   not draw
+	 * @param height
+	 *                   the height of the image frames are drawn into, or 0 to
+	 *                   not draw
+	 */
+	public HeadlessGame(Settings settings, int width, int height) {
+		this.settings = settings;
+		this.logic = new Logic(settings);
+		this.physics = new Physics(settings, logic);
+		this.timer = new Timer(this, settings, metrics);
+		if (width > 0 && height > 0) {
+			this.renderer = new Renderer(settings, logic.renderBuffer(), metrics);
+			this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		} else {
+			this.renderer = null;
+			this.image = null;
+		}
+		if (settings.jmxMetrics) metrics.register();
+		if (settings.recordPath != null) record(settings);
+	}
+
+	private void record(Settings settings) {
+		try {
+			recorder = new TickRecorder(Path.of(settings.recordPath), settings);
+			logic.setRecorder(recorder);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Adds an object to the game. Must not be called while the game is running
+	 * on its own thread
+	 *
+	 * @return if the object was awoken
+	 */
+	public boolean spawn(GameObject o) {
+		return logic.createLogicObject(o);
+	}
+
+	/**
+	 * Adds a sprite which never moves. Must not be called while the game is
+	 * running on its own thread
+	 */
+	public void addStaticSprite(GameSprite s) {
+		logic.addStaticSprite(s);
+	}
+
+	/**
+	 * Replaces the world with one saved by {@link #snapshot(Path)}, along with
+	 * the settings saved with it. Must be called before the first cycle and
+	 * before any object is added
+	 *
+	 * @throws IOException
+	 *                         if the file can not be read or is not a snapshot
+	 */
+	public void load(Path path) throws IOException {
+		WorldSnapshot.load(path, logic, settings);
+	}
+
+	@Override
+	public boolean cycle() {
+		long start = System.nanoTime();
+		LogicCycleResults logicresults = logic.cycle();
+		long logicEnd = System.nanoTime();
+		physics.cycle();
+		metrics.record(TickMetrics.Phase.LOGIC, logicEnd - start);
+		metrics.record(TickMetrics.Phase.PHYSICS, System.nanoTime() - logicEnd);
+		metrics.tick(logicresults);
+		if (recorder != null) {
+			recorder.tick(logic.cycles(), logic.seed(), logicresults.objects(), System.nanoTime() - start);
+		}
+		snapshot();
+		cycles++;
+		ended = logicresults.endgame();
+		return !ended;
+	}
+
+	/**
+	 * Saves the world to a file, captured between the next two cycles and
+	 * written over the cycles after, {@link Settings#snapshotBytesPerCycle} at a
+	 * time. May be called from any thread
+	 */
+	public void snapshot(Path path) {
+		this.snapshotRequest = path;
+	}
+
+	private void snapshot() {
+		try {
+			Path path = snapshotRequest;
+			if (path != null && snapshot == null) {
+				snapshotRequest = null;
+				snapshot = WorldSnapshot.capture(logic, settings, path);
+			}
+			if (snapshot != null && snapshot.step(settings.snapshotBytesPerCycle)) {
+				snapshot.close();
+				snapshot = null;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			if (snapshot != null) snapshot.abort();
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Draws the latest frame into {@link #getImage()}, if this game draws
+	 */
+	@Override
+	public void render(double alpha) {
+		if (renderer == null) return;
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.setColor(Color.white);
+			g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+			renderer.render(g2, image.getWidth(), image.getHeight(), alpha);
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * Runs cycles back to back on the calling thread, drawing after the last one
+	 *
+	 * @param  n
+	 *               the number of cycles to run
+	 *
+	 * @return   false if the game ended, in which case fewer cycles may have run
+	 */
+	public boolean step(int n) {
+		for (int i = 0; i < n; i++) {
+			if (!cycle()) break;
+		}
+		render(1);
+		return !ended;
+	}
+
+	/**
+	 * Runs the game in real time on a new thread until {@link #destroy()} or the
+	 * game ends
+	 */
+	public void start() {
+		animator = new Thread(timer, "headless-timer");
+		animator.start();
+	}
+
+	/**
+	 * @return the image frames are drawn into, or null if this game does not
+	 *         draw
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+	 * @return the number of cycles run
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * @return the camera of the latest cycle, for turning points on the surface
+	 *         into points in the world. May be called from any thread
+	 */
+	public Camera getCamera() {
+		return logic.renderBuffer().camera();
+	}
+
+	public TickMetrics getMetrics() {
+		return metrics;
+	}
+
+	Settings settings() {
+		return settings;
+	}
+
+	Logic logic() {
+		return logic;
+	}
+
+	public Physics getPhysics() {
+		return physics;
+	}
+
+	/**
+	 * Runs the parallel logic, the solver and the tiles of this game on a pool
+	 * owned by the caller, instead of a pool of their own each
+	 */
+	void setPool(ForkJoinPool pool) {
+		logic.setPool(pool);
+		physics.setPool(pool);
+		if (renderer != null) renderer.setPool(pool);
+	}
+
+	public void destroy() {
+		timer.destroy();
+		if (animator != null) {
+			try {
+				animator.join();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		physics.destroy();
+		logic.destroy();
+		if (renderer != null) renderer.destroy();
+		metrics.unregister();
+		if (snapshot != null) {
+			try {
+				snapshot.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (recorder != null) {
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Benchmarks the cycle and, if a size is given, the drawing of the same
+	 * scene as {@link Game}
+	 *
+	 * @param args
+	 *                 the number of cycles, then optionally the width and height
+	 *                 to draw at
+	 */
+	public static void main(String args[]) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int width = args.length > 2 ? Integer.parseInt(args[1]) : 0;
+		int height = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+		HeadlessGame g = new HeadlessGame(new Settings(), width, height);
+		g.addStaticSprite(new ShapeSprite(Color.red, Color.black, new BasicStroke(), new BasicStroke(),
+				new Rectangle(0, 0, 2, 2)));
+
+		long start = System.nanoTime();
+		for (int i = 0; i < n && g.step(1); i++);
+		long time = System.nanoTime() - start;
+		System.out.printf("%d cycles in %.1f ms, %.3f ms per cycle%n", g.getCycles(), time / 1e6,
+				time / 1e6 / Math.max(1, g.getCycles()));
+		for (TickMetrics.Phase p : TickMetrics.Phase.values()) {
+			Histogram h = g.getMetrics().phase(p);
+			System.out.printf("%-14s p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", p, h.getP50(), h.getP99(), h.getMax());
+		}
+		g.destroy();
+	}
+
+}
@@ -0,0 +1,109 @@
+package game2d.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with buckets of equal relative width, in the style of
+ * HdrHistogram
+ * <p>
+ * Each power of two is split into 32 buckets, so a recorded value is known to
+ * within about 3%, up to about 18 minutes in nanoseconds. Recording is a
+ * single array increment without locks or allocation. Each histogram must only
+ * be recorded into by one thread at a time, but may be read from any thread
+ * 
+ * @author Gareth Kmet
+ */
+public final class Histogram implements HistogramMBean {
+
+	private static final int SUB_BITS = 5, SUB = 1 << SUB_BITS;
+	private static final int MAX_BITS = 40;
+	private static final long MAX = (1L << MAX_BITS) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BITS + 1) * SUB);
+	private volatile long count = 0, total = 0, max = 0;
+
+	/**
+	 * @param nanos
+	 *                  the value to record, clamped to between 0 and about 18
+	 *                  minutes
+	 */
+	void record(long nanos) {
+		long v = Math.max(0, Math.min(MAX, nanos));
+		int b = bucket(v);
+		counts.lazySet(b, counts.get(b) + 1);
+		total += v;
+		if (v > max) max = v;
+		count++;
+	}
+
+	private static int bucket(long v) {
+		if (v < SUB * 2) return (int) v;
+		int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+		return shift * SUB + (int) (v >>> shift);
+	}
+
+	/**
+	 * @return the largest value which falls into a bucket
+	 */
+	private static long highest(int b) {
+		if (b < SUB * 2) return b;
+		int shift = (b >>> SUB_BITS) - 1;
+		long top = b - shift * SUB;
+		return ((top + 1) << shift) - 1;
+	}
+
+	/**
+	 * @param  p
+	 *               the percentile, between 0-100
+	 * 
+	 * @return   the value in nanoseconds at or below which <code>p</code>
+	 *           percent of the recorded values fall
+	 */
+	public long percentile(double p) {
+		long n = count;
+		if (n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+		long seen = 0;
+		for (int b = 0; b < counts.length(); b++) {
+			seen += counts.get(b);
+			if (seen >= rank) return Math.min(highest(b), max);
+		}
+		return max;
+	}
+
+	@Override
+	public long getCount() { return count; }
+
+	@Override
+	public double getMean() {
+		long n = count;
+		return n == 0 ? 0 : total / (double) n / 1e6;
+	}
+
+	@Override
+	public double getP50() { return percentile(50) / 1e6; }
+
+	@Override
+	public double getP90() { return percentile(90) / 1e6; }
+
+	@Override
+	public double getP99() { return percentile(99) / 1e6; }
+
+	@Override
+	public double getP999() { return percentile(99.9) / 1e6; }
+
+	@Override
+	public double getMax() { return max / 1e6; }
+
+	/**
+	 * Clears the histogram. Values recorded at the same time may be lost
+	 */
+	@Override
+	public void reset() {
+		for (int b = 0; b < counts.length(); b++) counts.set(b, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+}
@@ -0,0 +1,26 @@
+package game2d.engine;
+
+/**
+ * The JMX view of a {@link Histogram}. Times are in milliseconds
+ * 
+ * @author Gareth Kmet
+ */
+public interface HistogramMBean {
+
+	public long getCount();
+
+	public double getMean();
+
+	public double getP50();
+
+	public double getP90();
+
+	public double getP99();
+
+	public double getP999();
+
+	public double getMax();
+
+	public void reset();
+
+}
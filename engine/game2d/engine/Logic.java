@@ -1,51 +1,247 @@
 package game2d.engine;
 
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import game2d.objects.EntityObject;
 import game2d.objects.GameObject;
 import game2d.sprites.GameSprite;
+import game2d.sprites.ShapeSprite;
 
 public class Logic {
 
-	public static final char UNAWAKENED_ID = 0;
+	public static final int UNAWAKENED_ID = Handles.NULL;
 
 	private final ArrayList<GameSprite> staticSprites = new ArrayList<GameSprite>();
-	private final ArrayList<GameSprite> activeSprites = new ArrayList<GameSprite>();
+	private List<GameSprite> staticSnapshot = List.of();
+	private Shape[] staticShapes = {};
+	private SpriteIndex staticIndex;
+	private long staticsVersion = 0;
+	private boolean staticsChanged = false;
 
-	final HashSet<GameObject> logicObjects = new HashSet<GameObject>();
+	private final RenderBuffer renderBuffer;
+	private RenderBuffer.Frame frame;
+	private Camera camera;
+
+	final ObjectStore logicObjects = new ObjectStore();
+	final ObjectStore sleepingObjects = new ObjectStore();
+	final Components components = new Components();
+	final ArrayList<GameObject> physicalObjects = new ArrayList<GameObject>();
+
+	/**
+	 * The sprites of the sleeping {@link AliveState#PHYSICAL} objects, kept as
+	 * they fall asleep and wake so that only the awake bodies query them
+	 */
+	final SleeperSet sleepingBodies;
+	private final Rectangle2D sleeperBox = new Rectangle2D.Double();
+
+	private final ArrayList<GameSprite> freshSprites = new ArrayList<GameSprite>();
+
+	/**
+	 * The objects which fell asleep or were restored asleep, whose sprites are
+	 * placed with the sleepers once the sprites of entities are placed
+	 */
+	private final ArrayList<GameObject> newSleepers = new ArrayList<GameObject>();
+
+	private final TimingWheel wakeWheel = new TimingWheel(256);
+	private long[] wakeCycles = new long[64];
+	private int[] wakeRequests = new int[16];
+	private int wakeRequestsSize = 0;
 
 	private final Settings settings;
 
-	private char objects = 0;
+	private final Handles handles = new Handles();
+	private long cycles = 0;
+
+	private boolean endgame = false;
+	private int spawned = 0;
+
+	private long seed;
+	private long nextSeed;
+	private boolean seeded = false;
+	private TickRecorder recorder;
+	private List<Class<?>> spawnClasses;
+
+	private final CommandBuffer commands = new CommandBuffer();
+
+	private ForkJoinPool pool;
+	private boolean sharedPool = false;
+
+	private final LogicCycleResults results = new LogicCycleResults();
+	private final TimingWheel.Expiry wakeScheduled = this::wakeScheduled;
+	private final Events.LogicCycle event = new Events.LogicCycle();
+	private CommandBuffer[] chunkCommands = new CommandBuffer[0];
 
 	public Logic(Settings settings) {
 		this.settings = settings;
+		this.camera = new Camera(settings, 0, 0);
+		this.renderBuffer = new RenderBuffer(settings.cullCellSize, camera);
+		this.sleepingBodies = new SleeperSet(settings.broadphaseCellSize);
+		this.staticIndex = indexStatics(staticSnapshot, staticShapes);
 	}
 
 	public LogicCycleResults cycle() {
+		boolean recording = event.isEnabled();
+		if (recording) event.begin();
+
+		frame = renderBuffer.back();
+		frame.begin(++cycles);
+		endgame = false;
+		spawned = 0;
+		seed = seeded ? nextSeed : seed(settings.seed, cycles);
+		seeded = false;
+		commands.seed(seed);
+		physicalObjects.clear();
 
-		activeSprites.clear();
+		wakeWheel.advance(cycles, wakeScheduled);
+		for (int i = 0; i < wakeRequestsSize; i++) { wakeLogicObject(wakeRequests[i]); }
+		wakeRequestsSize = 0;
 
-		Iterator<GameObject> i = logicObjects.iterator();
+		if (settings.parallelLogic) {
+			cycleParallel();
+		} else {
+			cycleSequential();
+		}
+
+		Systems.move(components, settings.timePerCycle / 1000f, settings.sleepCycles);
+		Systems.transform(components);
+		for (int i = 0; i < freshSprites.size(); i++) { freshSprites.get(i).storePrevious(); }
+		freshSprites.clear();
+		Systems.collectVisible(components, frame);
 
-		while (i.hasNext()) {
-			GameObject o = i.next();
+		if (staticsChanged) {
+			staticSnapshot = snapshotStatics();
+			staticShapes = new Shape[staticSnapshot.size()];
+			staticIndex = indexStatics(staticSnapshot, staticShapes);
+			staticsVersion++;
+			staticsChanged = false;
+		}
+		frame.setStatics(staticSnapshot, staticShapes, staticIndex, staticsVersion);
+		frame.setCamera(camera());
+		for (int i = 0; i < newSleepers.size(); i++) {
+			GameObject o = newSleepers.get(i);
+			if (sleepingObjects.byId(o.identify()) != o) continue;
+			// the sprite of an entity which fell asleep on its first cycle was
+			// never placed
+			int row = components.row(o.identify());
+			if (row >= 0) Systems.transform(components, row, row + 1);
+			placeAsleep(o);
+		}
+		newSleepers.clear();
 
-			if (o.getObjectState() != ObjectState.ASLEEP)
-				cycleObject(o);
+		results.set(cycles, logicObjects.size(), sleepingObjects.size(), frame.size(),
+				staticSnapshot.size() + renderBuffer.sleepers(), spawned, endgame);
+		renderBuffer.publish();
+		frame = null;
 
-			if (o.getObjectState() == ObjectState.DEAD) {
-				i.remove();
-				continue;
+		if (recording) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.tick = cycles;
+				event.objects = results.objects();
+				event.activeSprites = results.activeSprites();
+				event.staticSprites = results.staticSprites();
+				event.spawns = results.spawns();
+				event.commit();
 			}
+		}
+		return results;
+
+	}
+
+	/**
+	 * Cycles the objects from the last slot down, so that the objects that die
+	 * or fall asleep can be removed from the store immediately and the objects
+	 * spawned are not cycled until the next cycle
+	 */
+	private void cycleSequential() {
+		for (int i = logicObjects.size() - 1; i >= 0; i--) {
+			GameObject o = logicObjects.get(i);
+
+			if (o.getObjectState() != ObjectState.ASLEEP) {
+				cycleObject(o, commands);
+				merge(commands);
+			}
+
+			if (workObjectState(i, o)) continue;
 
 			workObjectAliveStateFactors(o);
 
 		}
-		return new LogicCycleResults(staticSprites, activeSprites);
+	}
+
+	/**
+	 * Cycles every object on the {@link #pool} in chunks of
+	 * {@link Settings#logicChunkSize} slots, each writing into its own
+	 * {@link CommandBuffer}. Once every object has finished, the commands and
+	 * object states are applied chunk by chunk from the last slot down, so the
+	 * result does not depend on how the chunks were scheduled
+	 */
+	private void cycleParallel() {
+		int n = logicObjects.size();
+		int chunk = Math.max(1, settings.logicChunkSize);
+		int chunks = (n + chunk - 1) / chunk;
+		if (chunkCommands.length < chunks) {
+			int length = chunkCommands.length;
+			chunkCommands = Arrays.copyOf(chunkCommands, Math.max(chunks, length * 2));
+			for (int c = length; c < chunkCommands.length; c++) { chunkCommands[c] = new CommandBuffer(); }
+		}
+
+		for (int c = 0; c < chunks; c++) { chunkCommands[c].seed(seed + (c + 1) * 0x9E3779B97F4A7C15L); }
+
+		if (pool == null) { pool = new ForkJoinPool(); }
+		pool.invoke(new CycleTask(0, chunks, chunk, n));
+
+		for (int c = chunks - 1; c >= 0; c--) {
+			merge(chunkCommands[c]);
 
+			for (int i = Math.min(n, (c + 1) * chunk) - 1; i >= c * chunk; i--) {
+				GameObject o = logicObjects.get(i);
+
+				if (workObjectState(i, o)) continue;
+
+				workObjectAliveStateFactors(o);
+			}
+		}
+	}
+
+	/**
+	 * Cycles a range of chunks of {@link Logic#logicObjects}, splitting it until
+	 * it is a single chunk
+	 */
+	private final class CycleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to, chunk, size;
+
+		CycleTask(int from, int to, int chunk, int size) {
+			this.from = from;
+			this.to = to;
+			this.chunk = chunk;
+			this.size = size;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				for (int c = from; c < to; c++) {
+					CommandBuffer commands = chunkCommands[c];
+					for (int i = Math.min(size, (c + 1) * chunk) - 1; i >= c * chunk; i--) {
+						GameObject o = logicObjects.get(i);
+						if (o.getObjectState() != ObjectState.ASLEEP) cycleObject(o, commands);
+					}
+				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new CycleTask(from, mid, chunk, size), new CycleTask(mid, to, chunk, size));
+			}
+		}
 	}
 
 	/**
@@ -55,33 +251,408 @@ public class Logic {
 	 */
 	boolean createLogicObject(GameObject o) {
 		if (o.awaken(settings)) {
-			if (o.identify() == UNAWAKENED_ID) { o.identify(++objects); }
-			logicObjects.add(o);
+			if (!handles.isAlive(o.identify())) { o.identify(handles.allocate()); }
+			if (!logicObjects.add(o)) return false;
+			if (o instanceof EntityObject e && components.attach(o.identify())) { e.attach(components); }
+			resetPrevious(o);
 			return true;
 		}
 		return false;
 
 	}
 
+	/**
+	 * Removes the object at a slot from the cycled objects if it has died or
+	 * fallen asleep
+	 * 
+	 * @return if the object was removed
+	 */
+	private boolean workObjectState(int slot, GameObject o) {
+		ObjectState state = o.getObjectState();
+		if (state == ObjectState.DEAD) {
+			if (o instanceof EntityObject e) { e.detach(); }
+			components.detach(o.identify());
+			handles.release(o.identify());
+			logicObjects.removeAt(slot);
+			return true;
+		}
+		if (state == ObjectState.ASLEEP) {
+			logicObjects.removeAt(slot);
+			sleepLogicObject(o);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves an object to the sleeping objects, where it is not visited by the
+	 * cycle until it is woken. A visible sleeping object is drawn with the
+	 * static sprites and a physical one is still collided with
+	 */
+	private void sleepLogicObject(GameObject o) {
+		sleepingObjects.add(o);
+		components.sleep(o.identify());
+		newSleepers.add(o);
+
+		int index = Handles.index(o.identify());
+		if (index >= wakeCycles.length) { wakeCycles = Arrays.copyOf(wakeCycles, Math.max(index + 1, wakeCycles.length * 2)); }
+
+		int sleep = o.getSleepCycles();
+		if (sleep > 0) {
+			wakeCycles[index] = cycles + sleep;
+			wakeWheel.schedule(o.identify(), wakeCycles[index]);
+		} else {
+			wakeCycles[index] = 0;
+		}
+	}
+
+	private void wakeScheduled(int handle, long cycle) {
+		int index = Handles.index(handle);
+		if (wakeCycles[index] == cycle) { wakeLogicObject(handle); }
+	}
+
+	private boolean wakeLogicObject(int handle) {
+		GameObject o = sleepingObjects.byId(handle);
+		if (o == null) return false;
+
+		sleepingObjects.remove(o);
+		wakeCycles[Handles.index(handle)] = 0;
+		renderBuffer.wake(handle);
+		sleepingBodies.remove(handle, null);
+
+		o.wake(settings);
+		logicObjects.add(o);
+		components.wake(handle);
+		resetPrevious(o);
+		return true;
+	}
+
+	/**
+	 * Adds the sprite of a visible sleeping object to the sleepers drawn with
+	 * the static sprites, and that of a physical one to the sleeping bodies
+	 */
+	private void placeAsleep(GameObject o) {
+		if (!(o.getCurrentSprite() instanceof ShapeSprite shape)) return;
+		if ((o.getAliveState() & AliveState.VISIBLE) != 0) renderBuffer.sleep(o.identify(), shape);
+		if ((o.getAliveState() & AliveState.PHYSICAL) != 0) {
+			shape.getWorldBounds(sleeperBox);
+			sleepingBodies.add(o.identify(), shape, null, sleeperBox.getMinX(), sleeperBox.getMinY(),
+					sleeperBox.getMaxX(), sleeperBox.getMaxY());
+		}
+	}
+
+	/**
+	 * Stops the sprite of an object which has just been added or woken from
+	 * being blended from a transform it had before. The sprite of an entity
+	 * object is only placed by {@link Systems#transform}, so it is reset once
+	 * that has run
+	 */
+	private void resetPrevious(GameObject o) {
+		GameSprite s = o.getCurrentSprite();
+		if (s == null) return;
+		if (o instanceof EntityObject) {
+			freshSprites.add(s);
+		} else {
+			s.storePrevious();
+		}
+	}
+
+	/**
+	 * Requests a sleeping object be woken at the start of the next cycle
+	 * <p>
+	 * Must be called from the thread running the logic
+	 * 
+	 * @param handle
+	 *                   the id of the object
+	 */
+	public void wake(int handle) {
+		if (wakeRequestsSize == wakeRequests.length) {
+			wakeRequests = Arrays.copyOf(wakeRequests, wakeRequestsSize * 2);
+		}
+		wakeRequests[wakeRequestsSize++] = handle;
+	}
+
+	/**
+	 * @return the static sprites. The sprites of the visible sleeping objects
+	 *         are published separately, see {@link RenderBuffer#sleep}
+	 */
+	private List<GameSprite> snapshotStatics() {
+		return List.copyOf(staticSprites);
+	}
+
+	/**
+	 * @param  shapes
+	 *                     filled with the world shape of each static sprite
+	 * 
+	 * @return         an index of the world bounds of the static sprites, in the
+	 *                 same order
+	 */
+	private SpriteIndex indexStatics(List<GameSprite> statics, Shape[] shapes) {
+		SpriteIndex index = new SpriteIndex(settings.cullCellSize);
+		Rectangle2D.Double b = new Rectangle2D.Double();
+		for (int i = 0; i < statics.size(); i++) {
+			if (statics.get(i) instanceof ShapeSprite shape) {
+				shapes[i] = shape.getWorldShape();
+				shape.getWorldBounds(b);
+				index.add(b.x, b.y, b.x + b.width, b.y + b.height);
+			} else {
+				index.add(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+						Double.POSITIVE_INFINITY);
+			}
+		}
+		index.build();
+		return index;
+	}
+
+	/**
+	 * @param  handle
+	 *                    the id of an object
+	 * 
+	 * @return        the object, or null if the handle is stale or was never
+	 *                allocated
+	 */
+	public GameObject getLogicObject(int handle) {
+		if (!handles.isAlive(handle)) return null;
+		GameObject o = logicObjects.byId(handle);
+		return o != null ? o : sleepingObjects.byId(handle);
+	}
+
 	void addStaticSprite(GameSprite s) {
 		staticSprites.add(s);
+		staticsChanged = true;
 	}
 
-	private void cycleObject(GameObject o) {
-		CycleReturn c = o.cycle(settings);
+	/**
+	 * @return the number of cycles run
+	 */
+	long cycles() {
+		return cycles;
+	}
 
-		for (GameObject oa : c.addObjects()) { if (createLogicObject(oa)) { workObjectAliveStateFactors(oa); } }
+	/**
+	 * @return the seed of the {@link CommandBuffer#random()} of the last cycle
+	 */
+	long seed() {
+		return seed;
+	}
 
-		for (GameSprite sa : c.addStatics()) { addStaticSprite(sa); }
+	/**
+	 * @return the seed of a cycle, mixed from the seed of the world with the
+	 *         finalizer of SplitMix64 so that neighbouring cycles are unrelated
+	 */
+	static long seed(long seed, long cycle) {
+		long z = seed + cycle * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
+	/**
+	 * Replaces the seed the next cycle would have drawn, to replay a recording
+	 */
+	void seed(long seed) {
+		this.nextSeed = seed;
+		this.seeded = true;
+	}
+
+	Handles handles() {
+		return handles;
+	}
+
+	/**
+	 * @return the sprites added as static, without the sprites of sleeping
+	 *         objects
+	 */
+	List<GameSprite> staticSprites() {
+		return List.copyOf(staticSprites);
+	}
+
+	/**
+	 * @return the cycle a sleeping object is scheduled to wake on, or 0 if it
+	 *         sleeps until woken
+	 */
+	long wakeCycle(int handle) {
+		int index = Handles.index(handle);
+		return index < wakeCycles.length ? wakeCycles[index] : 0;
+	}
+
+	/**
+	 * Continues from a saved cycle. The seed of each cycle depends only on
+	 * {@link Settings#seed} and the cycle, so the following cycles draw the
+	 * seeds the saved world would have
+	 */
+	void restore(long cycles, long seed) {
+		this.cycles = cycles;
+		this.seed = seed;
+	}
+
+	/**
+	 * Adds an object which already has a live handle, as it was when saved
+	 * 
+	 * @param asleep
+	 *                   if the object was sleeping
+	 * @param wake
+	 *                   the cycle the object is scheduled to wake on, or 0
+	 */
+	void restore(GameObject o, boolean asleep, long wake) {
+		ObjectStore store = asleep ? sleepingObjects : logicObjects;
+		if (!store.add(o)) return;
+		if (o instanceof EntityObject e && components.attach(o.identify())) { e.attach(components); }
+		resetPrevious(o);
+		if (!asleep) return;
+
+		components.sleep(o.identify());
+		// the sprite of an entity is placed once every row is restored
+		newSleepers.add(o);
+		int index = Handles.index(o.identify());
+		if (index >= wakeCycles.length) { wakeCycles = Arrays.copyOf(wakeCycles, Math.max(index + 1, wakeCycles.length * 2)); }
+		wakeCycles[index] = wake;
+		if (wake > 0) wakeWheel.schedule(o.identify(), wake);
+	}
+
+	/**
+	 * @param recorder
+	 *                     told of every object spawned by a command, or null
+	 */
+	void setRecorder(TickRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * @param classes
+	 *                    receives the class of every object spawned by a
+	 *                    command, in the order they are spawned, or null
+	 */
+	void setSpawnClasses(List<Class<?>> classes) {
+		this.spawnClasses = classes;
+	}
+
+	/**
+	 * @return the camera of the current settings and surface, the same object as
+	 *         the last cycle if neither has changed
+	 */
+	private Camera camera() {
+		long viewport = renderBuffer.viewport();
+		int width = (int) (viewport >>> 32), height = (int) viewport;
+		if (!camera.matches(settings, width, height)) { camera = new Camera(settings, width, height); }
+		return camera;
+	}
+
+	/**
+	 * @return the buffer the results of each cycle are published to for drawing
+	 */
+	RenderBuffer renderBuffer() {
+		return renderBuffer;
+	}
+
+	private void cycleObject(GameObject o, CommandBuffer commands) {
+		GameSprite s = o.getCurrentSprite();
+		if (s != null) { s.storePrevious(); }
+
+		o.cycle(settings, commands);
+	}
+
+	/**
+	 * Applies and then clears the commands
+	 */
+	private void merge(CommandBuffer c) {
+		if (c.endgame()) endgame = true;
+
+		spawned += c.spawns();
+		for (int i = 0; i < c.spawns(); i++) {
+			GameObject oa = c.spawn(i);
+			if (recorder != null) recorder.spawn(oa);
+			if (spawnClasses != null) spawnClasses.add(oa.getClass());
+			if (createLogicObject(oa)) { workObjectAliveStateFactors(oa); }
+		}
+
+		for (int i = 0; i < c.statics(); i++) { addStaticSprite(c.staticSprite(i)); }
+
+		for (int i = 0; i < c.wakes(); i++) { wake(c.wakeHandle(i)); }
+
+		c.clear();
+	}
+
+	/**
+	 * Entity objects are collected for drawing in bulk by
+	 * {@link Systems#collectVisible}
+	 */
 	private void workObjectAliveStateFactors(GameObject o) {
-		if ((o.getAliveState() & AliveState.VISIBLE) != 0) { activeSprites.add(o.getCurrentSprite()); }
+		int state = o.getAliveState();
+		if ((state & AliveState.PHYSICAL) != 0) { physicalObjects.add(o); }
+		if (o instanceof EntityObject) return;
+		if ((state & AliveState.VISIBLE) != 0) { frame.add(o.getCurrentSprite()); }
+	}
+
+	/**
+	 * Runs the parallel work on a pool owned by the caller, which is not shut
+	 * down by {@link #destroy()}
+	 */
+	void setPool(ForkJoinPool pool) {
+		if (this.pool != null && !sharedPool) { this.pool.shutdown(); }
+		this.pool = pool;
+		this.sharedPool = true;
 	}
 
-	public void destroy() {}
+	public void destroy() {
+		if (pool != null && !sharedPool) { pool.shutdown(); }
+	}
 
-	record LogicCycleResults(ArrayList<GameSprite> staticSprites, ArrayList<GameSprite> activeSprites) {}
+	/**
+	 * The results of a cycle. The logic fills the same instance on every cycle,
+	 * so it only holds until the next one
+	 *
+	 * @author Gareth Kmet
+	 */
+	static final class LogicCycleResults {
+
+		private long tick;
+		private int objects, sleeping, activeSprites, staticSprites, spawns;
+		private boolean endgame;
+
+		/**
+		 * @param tick
+		 *                          the cycle
+		 * @param objects
+		 *                          the number of objects alive after the cycle
+		 * @param sleeping
+		 *                          the number of objects asleep after the cycle
+		 * @param activeSprites
+		 *                          the number of active sprites published for
+		 *                          drawing
+		 * @param staticSprites
+		 *                          the number of static sprites published for
+		 *                          drawing
+		 * @param spawns
+		 *                          the number of objects spawned during the cycle
+		 * @param endgame
+		 *                          if an object requested the game be ended
+		 */
+		void set(long tick, int objects, int sleeping, int activeSprites, int staticSprites, int spawns,
+				boolean endgame) {
+			this.tick = tick;
+			this.objects = objects;
+			this.sleeping = sleeping;
+			this.activeSprites = activeSprites;
+			this.staticSprites = staticSprites;
+			this.spawns = spawns;
+			this.endgame = endgame;
+		}
+
+		long tick() { return tick; }
+
+		int objects() { return objects; }
+
+		int sleeping() { return sleeping; }
+
+		int activeSprites() { return activeSprites; }
+
+		int staticSprites() { return staticSprites; }
+
+		int spawns() { return spawns; }
+
+		boolean endgame() { return endgame; }
+	}
 
 	public enum ObjectState { DEAD, ALIVE, ASLEEP }
 
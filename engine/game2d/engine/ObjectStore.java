@@ -0,0 +1,110 @@
+package game2d.engine;
+
+import java.util.Arrays;
+
+import game2d.objects.GameObject;
+
+/**
+ * Dense store of the objects in the logic
+ * <p>
+ * Objects are packed at the front of an array so that iterating the store is
+ * a linear walk over memory. An index from the {@link Handles#index(int)} of an
+ * object's id to its slot gives constant time lookup, and removal moves the
+ * last object into the freed slot.
+ * <p>
+ * Removing the object at a slot only moves the object from the last slot, so a
+ * store can be safely modified while it is iterated from the last slot down to
+ * the first.
+ * 
+ * @author Gareth Kmet
+ */
+final class ObjectStore {
+
+	private static final int ABSENT = -1;
+
+	private GameObject[] objects = new GameObject[64];
+	private int size = 0;
+
+	/**
+	 * The slot of each object indexed by the handle index of its id, or
+	 * {@link #ABSENT}
+	 */
+	private int[] slots = new int[64];
+
+	ObjectStore() {
+		Arrays.fill(slots, ABSENT);
+	}
+
+	/**
+	 * @param  o
+	 * 
+	 * @return   false if an object with the same id is already in the store
+	 */
+	boolean add(GameObject o) {
+		int index = Handles.index(o.identify());
+		if (index >= slots.length) {
+			int length = slots.length;
+			slots = Arrays.copyOf(slots, Math.max(index + 1, length * 2));
+			Arrays.fill(slots, length, slots.length, ABSENT);
+		} else if (slots[index] != ABSENT) { return false; }
+
+		if (size == objects.length) { objects = Arrays.copyOf(objects, size * 2); }
+		objects[size] = o;
+		slots[index] = size++;
+		return true;
+	}
+
+	/**
+	 * @param  o
+	 * 
+	 * @return   if the object was in the store
+	 */
+	boolean remove(GameObject o) {
+		int slot = slotOf(o.identify());
+		if (slot == ABSENT || objects[slot] != o) return false;
+		removeAt(slot);
+		return true;
+	}
+
+	/**
+	 * Removes the object at a slot by moving the object in the last slot into it
+	 * 
+	 * @param slot
+	 */
+	void removeAt(int slot) {
+		GameObject o = objects[slot];
+		GameObject last = objects[--size];
+		objects[slot] = last;
+		objects[size] = null;
+		slots[Handles.index(last.identify())] = slot;
+		slots[Handles.index(o.identify())] = ABSENT;
+	}
+
+	/**
+	 * @param  id
+	 * 
+	 * @return    the object with this id, or null if none is in the store
+	 */
+	GameObject byId(int id) {
+		int slot = slotOf(id);
+		return slot == ABSENT || objects[slot].identify() != id ? null : objects[slot];
+	}
+
+	private int slotOf(int id) {
+		int index = Handles.index(id);
+		return index < slots.length ? slots[index] : ABSENT;
+	}
+
+	boolean contains(GameObject o) {
+		return byId(o.identify()) == o;
+	}
+
+	GameObject get(int slot) {
+		return objects[slot];
+	}
+
+	int size() {
+		return size;
+	}
+
+}
@@ -1,17 +1,274 @@
 package game2d.engine;
 
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import game2d.objects.GameObject;
+import game2d.physics.Bounds;
+import game2d.physics.Broadphase;
+import game2d.physics.Contact;
+import game2d.physics.ConvexPolygon;
+import game2d.physics.Narrowphase;
+import game2d.physics.PairBuffer;
+import game2d.sprites.ShapeSprite;
+
 public class Physics {
-	
-	public Physics(Settings settings){
-		
+
+	private final Settings settings;
+	private final Logic logic;
+
+	private Broadphase broadphase;
+
+	private final Bounds bounds = new Bounds();
+	private final PairBuffer pairs = new PairBuffer();
+	private final Rectangle2D box = new Rectangle2D.Double();
+
+	private final Narrowphase narrowphase = new Narrowphase();
+	private final ArrayList<Contact> contacts = new ArrayList<Contact>();
+	private final Solver solver;
+
+	/**
+	 * Per body, its row in the components or -1 if it can not be pushed
+	 */
+	private int[] bodyRows = new int[64];
+
+	/**
+	 * The bodies of each touching contact
+	 */
+	private int[] contactA = new int[64], contactB = new int[64];
+
+	/**
+	 * The world space vertices and edge normals of the hull of each body, only
+	 * transformed for the bodies in a pair
+	 */
+	private float[] vertexX = new float[256], vertexY = new float[256];
+	private float[] normalX = new float[256], normalY = new float[256];
+	private int vertices = 0;
+	private int[] vertexStart = new int[64];
+
+	/**
+	 * The object of each box in {@link #bounds}
+	 */
+	private final ArrayList<GameObject> bodies = new ArrayList<GameObject>();
+
+	/**
+	 * The number of awake bodies, which come before the sleeping bodies
+	 */
+	private int awakeBodies = 0;
+
+	/**
+	 * Per slot of {@link Logic#sleepingBodies}, the body it was added as while
+	 * its stamp is the current {@link #stamp}
+	 */
+	private int[] sleeperBodies = new int[64], sleeperStamps = new int[64];
+	private int stamp = 0;
+	private final SpriteIndex.Selection selection = new SpriteIndex.Selection();
+
+	private final Events.PhysicsCycle event = new Events.PhysicsCycle();
+
+	public Physics(Settings settings, Logic logic) {
+		this.settings = settings;
+		this.logic = logic;
+		this.solver = new Solver(settings, logic.components);
+		this.broadphase = switch (settings.broadphase) {
+			case NAIVE -> new Broadphase.Naive();
+			case SWEEP_AND_PRUNE -> new Broadphase.SweepAndPrune();
+			case UNIFORM_GRID -> new Broadphase.UniformGrid(settings.broadphaseCellSize);
+		};
 	}
-	
+
+	/**
+	 * Collects the bounds of every {@link Logic.AliveState#PHYSICAL} object
+	 * visible to the logic this cycle, finds the pairs which may collide, tests
+	 * their hulls for overlap and pushes the overlapping bodies apart
+	 * <p>
+	 * Only awake entity objects with a mass are pushed. Pairs where neither body
+	 * can be pushed or is awake are not tested. The sleeping bodies are kept in
+	 * {@link Logic#sleepingBodies} and only found by querying it with the bounds
+	 * of the bodies which can be pushed. A sleeping body is not moved, but is
+	 * woken for the next cycle once an awake body touches it
+	 */
 	public void cycle() {
-		
+		boolean recording = event.isEnabled();
+		if (recording) event.begin();
+
+		bounds.clear();
+		pairs.clear();
+		bodies.clear();
+		contacts.clear();
+
+		for (GameObject o : logic.physicalObjects) {
+			if (!(o.getCurrentSprite() instanceof ShapeSprite shape)) continue;
+			shape.getWorldBounds(box);
+			bounds.add(o.identify(), (float) box.getMinX(), (float) box.getMinY(), (float) box.getMaxX(),
+					(float) box.getMaxY());
+			bodies.add(o);
+		}
+		awakeBodies = bodies.size();
+
+		broadphase.collide(bounds, pairs);
+
+		Components components = logic.components;
+		capacity(awakeBodies);
+		for (int i = 0; i < awakeBodies; i++) {
+			int row = components.row(bodies.get(i).identify());
+			bodyRows[i] = row >= 0 && components.invMass[row] > 0 ? row : -1;
+		}
+
+		SleeperSet sleepers = logic.sleepingBodies;
+		if (sleepers.size() > 0) {
+			if (sleeperStamps.length < sleepers.size()) {
+				sleeperStamps = new int[Math.max(sleepers.size(), sleeperStamps.length * 2)];
+				sleeperBodies = new int[sleeperStamps.length];
+			}
+			stamp++;
+			for (int i = 0; i < awakeBodies; i++) {
+				if (!active(i)) continue;
+				sleepers.query(bounds.minX[i], bounds.minY[i], bounds.maxX[i], bounds.maxY[i], selection);
+				for (int k = 0; k < selection.size(); k++) {
+					int slot = selection.get(k);
+					if (sleeperStamps[slot] != stamp) {
+						GameObject o = logic.sleepingObjects.byId(sleepers.handle(slot));
+						if (o == null || o.getCurrentSprite() != sleepers.sprite(slot)) continue;
+						sleeperStamps[slot] = stamp;
+						sleeperBodies[slot] = bodies.size();
+						capacity(bodies.size() + 1);
+						bodyRows[bodies.size()] = -1;
+						bodies.add(o);
+					}
+					pairs.add(i, sleeperBodies[slot]);
+				}
+			}
+		}
+
+		int n = bodies.size();
+		Arrays.fill(vertexStart, 0, n, -1);
+		vertices = 0;
+
+		narrowphase.begin();
+		for (int i = 0; i < pairs.size(); i++) {
+			int a = pairs.a(i), b = pairs.b(i);
+			if (!active(a) && !active(b)) continue;
+			// the order of the bodies changes as objects are removed, so key the
+			// cached contact by the lower handle first
+			if (Integer.compareUnsigned(bodies.get(a).identify(), bodies.get(b).identify()) > 0) {
+				int t = a;
+				a = b;
+				b = t;
+			}
+
+			ShapeSprite sa = (ShapeSprite) bodies.get(a).getCurrentSprite();
+			ShapeSprite sb = (ShapeSprite) bodies.get(b).getCurrentSprite();
+			int va = vertices(a, sa), vb = vertices(b, sb);
+			Contact c = narrowphase.collide(bodies.get(a).identify(), bodies.get(b).identify(), vertexX, vertexY,
+					normalX, normalY, va, sa.getHull().size(), vb, sb.getHull().size());
+			if (c.isTouching()) {
+				if (contacts.size() == contactA.length) {
+					contactA = Arrays.copyOf(contactA, contactA.length * 2);
+					contactB = Arrays.copyOf(contactB, contactB.length * 2);
+				}
+				contactA[contacts.size()] = a;
+				contactB[contacts.size()] = b;
+				contacts.add(c);
+				if (a >= awakeBodies) logic.wake(bodies.get(a).identify());
+				if (b >= awakeBodies) logic.wake(bodies.get(b).identify());
+			}
+		}
+
+		solver.solve(bodyRows, n, contacts, contactA, contactB);
+
+		if (recording) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.tick = logic.cycles();
+				event.bodies = n;
+				event.pairs = pairs.size();
+				event.contacts = contacts.size();
+				event.islands = solver.islands();
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Grows the arrays per body to hold at least a number of bodies, keeping
+	 * their contents
+	 */
+	private void capacity(int n) {
+		if (bodyRows.length < n) {
+			int length = Math.max(n, bodyRows.length * 2);
+			bodyRows = Arrays.copyOf(bodyRows, length);
+			vertexStart = Arrays.copyOf(vertexStart, length);
+		}
+	}
+
+	/**
+	 * @return if a body can be pushed and is not asleep
+	 */
+	private boolean active(int body) {
+		int r = bodyRows[body];
+		if (r < 0) return false;
+		Components c = logic.components;
+		return c.rest[r] < settings.sleepCycles || c.vx[r] != 0 || c.vy[r] != 0 || c.omega[r] != 0;
+	}
+
+	/**
+	 * @return the index of the first world space vertex of a body, transforming
+	 *         its hull if it has not been yet this cycle
+	 */
+	private int vertices(int body, ShapeSprite shape) {
+		if (vertexStart[body] >= 0) return vertexStart[body];
+
+		ConvexPolygon hull = shape.getHull();
+		if (vertices + hull.size() > vertexX.length) {
+			int length = Math.max(vertices + hull.size(), vertexX.length * 2);
+			vertexX = Arrays.copyOf(vertexX, length);
+			vertexY = Arrays.copyOf(vertexY, length);
+			normalX = Arrays.copyOf(normalX, length);
+			normalY = Arrays.copyOf(normalY, length);
+		}
+		hull.transform(shape.transformation(), vertexX, vertexY, vertices);
+		hull.normals(vertexX, vertexY, normalX, normalY, vertices);
+		vertexStart[body] = vertices;
+		vertices += hull.size();
+		return vertexStart[body];
+	}
+
+	/**
+	 * @param broadphase
+	 *                       the broadphase to use from the next cycle
+	 */
+	public void setBroadphase(Broadphase broadphase) { this.broadphase = broadphase; }
+
+	/**
+	 * @return the number of pairs found by the broadphase on the last cycle
+	 */
+	public int getPairCount() { return pairs.size(); }
+
+	/**
+	 * @return the number of pairs found to overlap on the last cycle
+	 */
+	public int getContactCount() { return contacts.size(); }
+
+	/**
+	 * @return the number of islands the solver found on the last cycle
+	 */
+	public int getIslandCount() { return solver.islands(); }
+
+	/**
+	 * Solves islands on a pool owned by the caller, which is not shut down by
+	 * {@link #destroy()}
+	 */
+	void setPool(ForkJoinPool pool) {
+		solver.setPool(pool);
 	}
-	
+
 	public void destroy() {
-		
+		solver.destroy();
 	}
 
+	public enum BroadphaseType { NAIVE, UNIFORM_GRID, SWEEP_AND_PRUNE }
+
 }
@@ -0,0 +1,112 @@
+package game2d.engine;
+
+import java.awt.RenderingHints;
+
+/**
+ * Lowers the quality of rendering while drawing a frame takes longer than
+ * {@link Settings#timePerFrame}, and raises it again once there is headroom
+ * <p>
+ * The time is smoothed over several frames, and stepping up needs both a much
+ * lower time and many more frames than stepping down, so that the quality does
+ * not flicker between two levels at the edge of the budget
+ *
+ * @author Gareth Kmet
+ */
+final class QualityGovernor {
+
+	/**
+	 * The levels of quality, from best to fastest, each with a cached set of
+	 * hints
+	 *
+	 * @author Gareth Kmet
+	 */
+	enum Quality {
+		HIGH(true, RenderingHints.VALUE_RENDER_QUALITY, RenderingHints.VALUE_STROKE_PURE, true),
+		BALANCED(true, RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_STROKE_NORMALIZE, true),
+		FAST(false, RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_STROKE_NORMALIZE, true),
+		MINIMAL(false, RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_STROKE_NORMALIZE, false);
+
+		private final RenderingHints hints;
+		private final boolean outlines;
+
+		private Quality(boolean antialias, Object rendering, Object strokeControl, boolean outlines) {
+			this.hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING,
+					antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+			hints.put(RenderingHints.KEY_RENDERING, rendering);
+			hints.put(RenderingHints.KEY_STROKE_CONTROL, strokeControl);
+			this.outlines = outlines;
+		}
+
+		/**
+		 * @return the hints of this level, which must not be modified
+		 */
+		RenderingHints hints() {
+			return hints;
+		}
+
+		/**
+		 * @return if sprites should be outlined
+		 */
+		boolean outlines() {
+			return outlines;
+		}
+	}
+
+	/**
+	 * The weight of the newest frame in the smoothed time
+	 */
+	private static final double SMOOTHING = 0.1;
+
+	/**
+	 * The proportion of the budget the smoothed time must stay under to step up
+	 */
+	private static final double HEADROOM = 0.6;
+
+	private static final int DOWN_FRAMES = 10, UP_FRAMES = 120;
+
+	private final Settings settings;
+
+	private Quality quality = Quality.HIGH;
+	private double average = -1;
+	private int over = 0, under = 0;
+
+	QualityGovernor(Settings settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * @return the quality the next frame should be drawn at
+	 */
+	Quality quality() {
+		return settings.adaptiveQuality ? quality : Quality.HIGH;
+	}
+
+	/**
+	 * Records how long a frame took to draw and steps the quality if needed
+	 *
+	 * @param nanos
+	 *                  the time spent drawing the frame
+	 */
+	void frame(long nanos) {
+		average = average < 0 ? nanos : average + (nanos - average) * SMOOTHING;
+		double budget = settings.timePerFrame * 1e6;
+
+		if (average > budget) {
+			under = 0;
+			if (++over >= DOWN_FRAMES && quality.ordinal() < Quality.values().length - 1) {
+				quality = Quality.values()[quality.ordinal() + 1];
+				over = 0;
+			}
+		} else if (average < budget * HEADROOM) {
+			over = 0;
+			if (++under >= UP_FRAMES && quality.ordinal() > 0) {
+				quality = Quality.values()[quality.ordinal() - 1];
+				under = 0;
+			}
+		} else {
+			over = 0;
+			under = 0;
+		}
+	}
+
+}
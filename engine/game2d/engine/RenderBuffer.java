@@ -0,0 +1,505 @@
+package game2d.engine;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import game2d.sprites.GameSprite;
+import game2d.sprites.ShapeSprite;
+
+/**
+ * Lock-free triple buffer of {@link Frame}s passed from the logic to the
+ * graphics
+ * <p>
+ * The logic fills the back frame and publishes it with a single atomic
+ * exchange against the middle frame. The graphics exchanges its front frame
+ * with the middle frame only if a newer one has been published. Neither side
+ * ever blocks on the other, the graphics never sees a frame that is still being
+ * written, and frames are reused so no sprite lists are copied per cycle.
+ * <p>
+ * Each frame keeps its own {@link SleeperSet} of the sprites of the visible
+ * sleeping objects. The objects which fell asleep or woke since a frame was
+ * last written are replayed into it when it is published, and the part of the
+ * world each change covered is kept for the last {@link #DAMAGE} publishes so
+ * that the graphics only draws the sleepers again where they changed.
+ * 
+ * @author Gareth Kmet
+ */
+final class RenderBuffer {
+
+	private static final int INDEX = 0b11, FRESH = 0b100;
+
+	/**
+	 * The number of publishes the changed part of the sleepers is kept for
+	 */
+	static final int DAMAGE = 64;
+
+	/**
+	 * An object falling asleep or waking, to be replayed into each frame
+	 *
+	 * @author Gareth Kmet
+	 */
+	private record Change(long version, int handle, ShapeSprite sprite, Shape shape, double x0, double y0, double x1,
+			double y1) {}
+
+	private final Frame[] frames;
+
+	/**
+	 * Index of the middle frame, with {@link #FRESH} set if it was published
+	 * since the graphics last acquired
+	 */
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	/**
+	 * Owned by the logic thread
+	 */
+	private int back = 0;
+
+	/**
+	 * Owned by the graphics thread
+	 */
+	private int front = 2;
+
+	/**
+	 * The size of the surface last drawn onto, width in the high 32 bits
+	 */
+	private volatile long viewport = 0;
+
+	private volatile Camera camera;
+
+	/**
+	 * Owned by the logic thread. The current sleepers, which a frame too far
+	 * behind the changes is copied from, the changes not yet replayed into every
+	 * frame, and the part of the world changed by each publish
+	 */
+	private final SleeperSet sleepers;
+	private final ArrayList<Change> changes = new ArrayList<Change>();
+	private long sleepersVersion = 0;
+	private final long[] damageVersions = new long[DAMAGE];
+	private final double[] damage = new double[DAMAGE * 4];
+	private final Rectangle2D.Double changed = new Rectangle2D.Double();
+	private boolean dirty = false;
+
+	/**
+	 * @param cellSize
+	 *                     the cell size of the {@link SpriteIndex} of each frame
+	 * @param camera
+	 *                     the camera of the frames drawn before the first cycle
+	 */
+	RenderBuffer(double cellSize, Camera camera) {
+		this.frames = new Frame[] { new Frame(cellSize, camera), new Frame(cellSize, camera),
+				new Frame(cellSize, camera) };
+		this.camera = camera;
+		this.sleepers = new SleeperSet(cellSize);
+		Arrays.fill(damageVersions, -1);
+	}
+
+	/**
+	 * @return the frame the logic may write into until the next
+	 *         {@link #publish()}
+	 */
+	Frame back() {
+		return frames[back];
+	}
+
+	/**
+	 * Makes the back frame available to the graphics and takes ownership of a
+	 * new back frame
+	 */
+	void publish() {
+		frames[back].index.build();
+		publishSleepers(frames[back]);
+		camera = frames[back].camera;
+		back = middle.getAndSet(back | FRESH) & INDEX;
+	}
+
+	/**
+	 * Adds the sprite of an object which fell asleep to the sleepers of the
+	 * frames published from now on. Called by the logic
+	 */
+	void sleep(int handle, ShapeSprite sprite) {
+		Rectangle2D.Double b = new Rectangle2D.Double();
+		sprite.getWorldBounds(b);
+		Change c = new Change(sleepersVersion + 1, handle, sprite, sprite.getWorldShape(), b.x, b.y, b.x + b.width,
+				b.y + b.height);
+		apply(sleepers, c);
+		changes.add(c);
+		damage(b);
+	}
+
+	/**
+	 * Removes the sprite of an object which woke from the sleepers of the frames
+	 * published from now on. Called by the logic
+	 */
+	void wake(int handle) {
+		Rectangle2D.Double b = new Rectangle2D.Double();
+		if (!sleepers.remove(handle, b)) return;
+		changes.add(new Change(sleepersVersion + 1, handle, null, null, 0, 0, 0, 0));
+		damage(b);
+	}
+
+	/**
+	 * @return the number of visible sleeping objects
+	 */
+	int sleepers() {
+		return sleepers.size();
+	}
+
+	private void damage(Rectangle2D b) {
+		if (dirty) {
+			changed.add(b);
+		} else {
+			changed.setRect(b);
+			dirty = true;
+		}
+	}
+
+	private static void apply(SleeperSet set, Change c) {
+		if (c.sprite() == null) {
+			set.remove(c.handle(), null);
+		} else {
+			set.add(c.handle(), c.sprite(), c.shape(), c.x0(), c.y0(), c.x1(), c.y1());
+		}
+	}
+
+	/**
+	 * Brings the sleepers of a frame up to date, copying them whole if some of
+	 * the changes it missed were already dropped
+	 */
+	private void publishSleepers(Frame f) {
+		if (dirty) {
+			sleepersVersion++;
+			int slot = (int) (sleepersVersion % DAMAGE);
+			damageVersions[slot] = sleepersVersion;
+			damage[slot * 4] = changed.getMinX();
+			damage[slot * 4 + 1] = changed.getMinY();
+			damage[slot * 4 + 2] = changed.getMaxX();
+			damage[slot * 4 + 3] = changed.getMaxY();
+			dirty = false;
+		}
+		if (f.sleepersVersion == sleepersVersion) return;
+
+		long oldest = changes.isEmpty() ? sleepersVersion + 1 : changes.get(0).version();
+		if (f.sleepersVersion + 1 < oldest) {
+			f.sleepers.copy(sleepers);
+		} else {
+			for (int i = 0; i < changes.size(); i++) {
+				if (changes.get(i).version() > f.sleepersVersion) apply(f.sleepers, changes.get(i));
+			}
+		}
+		f.sleepersVersion = sleepersVersion;
+		System.arraycopy(damageVersions, 0, f.damageVersions, 0, DAMAGE);
+		System.arraycopy(damage, 0, f.damage, 0, DAMAGE * 4);
+
+		// drop the changes every frame has, or which a frame held by the graphics
+		// for too long would have to replay
+		long applied = Math.min(frames[0].sleepersVersion,
+				Math.min(frames[1].sleepersVersion, frames[2].sleepersVersion));
+		int drop = 0;
+		while (drop < changes.size() && (changes.get(drop).version() <= applied
+				|| changes.size() - drop > Math.max(1024, sleepers.size()))) {
+			drop++;
+		}
+		// a version is only dropped whole, so a frame never replays part of one
+		while (drop > 0 && drop < changes.size() && changes.get(drop).version() == changes.get(drop - 1).version()) {
+			drop++;
+		}
+		if (drop > 0) changes.subList(0, drop).clear();
+	}
+
+	/**
+	 * @return the camera of the most recently published frame, which may be read
+	 *         from any thread
+	 */
+	Camera camera() {
+		return camera;
+	}
+
+	/**
+	 * Tells the logic the size of the surface, so that the cameras it publishes
+	 * fit it. Called by the graphics
+	 */
+	void viewport(int width, int height) {
+		long v = (long) width << 32 | height & 0xFFFFFFFFL;
+		if (viewport != v) viewport = v;
+	}
+
+	/**
+	 * @return the size of the surface last drawn onto, width in the high 32 bits
+	 *         and height in the low 32 bits
+	 */
+	long viewport() {
+		return viewport;
+	}
+
+	/**
+	 * @return the most recently published frame, which the graphics may read
+	 *         until the next call
+	 */
+	Frame acquire() {
+		if ((middle.get() & FRESH) != 0) { front = middle.getAndSet(front) & INDEX; }
+		return frames[front];
+	}
+
+	/**
+	 * The sprites visible during a single cycle
+	 * <p>
+	 * The transforms of the active sprites are captured when they are added so
+	 * that drawing a frame never reads a transform the logic is modifying. The
+	 * bounds of each sprite over the whole cycle are indexed so that the
+	 * graphics may skip those outside the view
+	 * 
+	 * @author Gareth Kmet
+	 */
+	static final class Frame {
+
+		private long cycle;
+		private List<GameSprite> statics = List.of();
+		private Shape[] staticShapes = {};
+		private SpriteIndex staticIndex;
+		private long staticsVersion = -1;
+		private Camera camera;
+
+		private final SleeperSet sleepers;
+		private long sleepersVersion = 0;
+		private final long[] damageVersions = new long[DAMAGE];
+		private final double[] damage = new double[DAMAGE * 4];
+
+		private final SpriteIndex index;
+		private final Rectangle2D.Double bounds = new Rectangle2D.Double();
+
+		private GameSprite[] sprites = new GameSprite[64];
+		private Shape[] shapes = new Shape[64];
+		private double[] previous = new double[64 * 6];
+		private double[] current = new double[64 * 6];
+		private int size = 0;
+
+		Frame(double cellSize, Camera camera) {
+			this.camera = camera;
+			this.index = new SpriteIndex(cellSize);
+			this.staticIndex = new SpriteIndex(cellSize);
+			staticIndex.build();
+			this.sleepers = new SleeperSet(cellSize);
+			Arrays.fill(damageVersions, -1);
+		}
+
+		void begin(long cycle) {
+			Arrays.fill(sprites, 0, size, null);
+			Arrays.fill(shapes, 0, size, null);
+			this.size = 0;
+			index.clear();
+			this.cycle = cycle;
+		}
+
+		/**
+		 * @param statics
+		 * @param shapes
+		 *                    the world shape of each static sprite, or null if it
+		 *                    is not a {@link ShapeSprite}
+		 * @param index
+		 *                    a built index of the static sprites, in the same order
+		 * @param version
+		 */
+		void setStatics(List<GameSprite> statics, Shape[] shapes, SpriteIndex index, long version) {
+			this.statics = statics;
+			this.staticShapes = shapes;
+			this.staticIndex = index;
+			this.staticsVersion = version;
+		}
+
+		void add(GameSprite s) {
+			if (size == sprites.length) {
+				sprites = Arrays.copyOf(sprites, size * 2);
+				shapes = Arrays.copyOf(shapes, size * 2);
+				previous = Arrays.copyOf(previous, size * 12);
+				current = Arrays.copyOf(current, size * 12);
+			}
+			sprites[size] = s;
+			store(s.previousTransformation(), previous, size * 6);
+			store(s.transformation(), current, size * 6);
+			if (s instanceof ShapeSprite shape) {
+				// every blend of two equal matrices is the cached world shape
+				if (Arrays.equals(previous, size * 6, size * 6 + 6, current, size * 6, size * 6 + 6)) {
+					shapes[size] = shape.getWorldShape();
+				}
+				// a blend of the two matrices moves each point in a line, so the
+				// union of both bounds holds every interpolated shape
+				Rectangle2D b = shape.getBounds();
+				bounds(b, current, size * 6, bounds);
+				double x0 = bounds.x, y0 = bounds.y, x1 = bounds.x + bounds.width, y1 = bounds.y + bounds.height;
+				bounds(b, previous, size * 6, bounds);
+				index.add(Math.min(x0, bounds.x), Math.min(y0, bounds.y), Math.max(x1, bounds.x + bounds.width),
+						Math.max(y1, bounds.y + bounds.height));
+			} else {
+				index.add(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+						Double.POSITIVE_INFINITY);
+			}
+			size++;
+		}
+
+		private static void bounds(Rectangle2D b, double[] a, int o, Rectangle2D dst) {
+			double cx = b.getCenterX(), cy = b.getCenterY();
+			double hw = b.getWidth() / 2, hh = b.getHeight() / 2;
+			double x = a[o] * cx + a[o + 2] * cy + a[o + 4];
+			double y = a[o + 1] * cx + a[o + 3] * cy + a[o + 5];
+			double ex = Math.abs(a[o]) * hw + Math.abs(a[o + 2]) * hh;
+			double ey = Math.abs(a[o + 1]) * hw + Math.abs(a[o + 3]) * hh;
+			dst.setRect(x - ex, y - ey, ex * 2, ey * 2);
+		}
+
+		private static void store(AffineTransform t, double[] a, int o) {
+			a[o] = t.getScaleX();
+			a[o + 1] = t.getShearY();
+			a[o + 2] = t.getShearX();
+			a[o + 3] = t.getScaleY();
+			a[o + 4] = t.getTranslateX();
+			a[o + 5] = t.getTranslateY();
+		}
+
+		void setCamera(Camera camera) {
+			this.camera = camera;
+		}
+
+		/**
+		 * @return the camera of the cycle this frame was produced on
+		 */
+		Camera camera() {
+			return camera;
+		}
+
+		/**
+		 * @return the cycle this frame was produced on
+		 */
+		long cycle() {
+			return cycle;
+		}
+
+		/**
+		 * @return an immutable list of the static sprites
+		 */
+		List<GameSprite> statics() {
+			return statics;
+		}
+
+		/**
+		 * @return the world shape of a static sprite, or null if it is not a
+		 *         {@link ShapeSprite}
+		 */
+		Shape staticShape(int i) {
+			return staticShapes[i];
+		}
+
+		/**
+		 * @return the index of the bounds of {@link #statics()}
+		 */
+		SpriteIndex staticIndex() {
+			return staticIndex;
+		}
+
+		/**
+		 * @return the index of the bounds of the active sprites
+		 */
+		SpriteIndex index() {
+			return index;
+		}
+
+		/**
+		 * @return a number which changes whenever {@link #statics()} changes
+		 */
+		long staticsVersion() {
+			return staticsVersion;
+		}
+
+		/**
+		 * @return the sprites of the visible sleeping objects, which are drawn
+		 *         with the static sprites
+		 */
+		SleeperSet sleepers() {
+			return sleepers;
+		}
+
+		/**
+		 * @return a number which changes whenever {@link #sleepers()} changes
+		 */
+		long sleepersVersion() {
+			return sleepersVersion;
+		}
+
+		/**
+		 * Finds the part of the world where the sleepers changed since an
+		 * earlier version
+		 *
+		 * @param  since
+		 *                   a version of the sleepers of an earlier frame
+		 * @param  dst
+		 *                   receives the bounds of every change after that version
+		 *
+		 * @return       false if the changes are no longer known, in which case
+		 *               every sleeper must be drawn again
+		 */
+		boolean damage(long since, Rectangle2D dst) {
+			if (since > sleepersVersion || sleepersVersion - since > DAMAGE) return false;
+			boolean empty = true;
+			for (long v = since + 1; v <= sleepersVersion; v++) {
+				int slot = (int) (v % DAMAGE);
+				if (damageVersions[slot] != v) return false;
+				double x0 = damage[slot * 4], y0 = damage[slot * 4 + 1];
+				double x1 = damage[slot * 4 + 2], y1 = damage[slot * 4 + 3];
+				if (empty) {
+					dst.setRect(x0, y0, x1 - x0, y1 - y0);
+					empty = false;
+				} else {
+					dst.add(x0, y0);
+					dst.add(x1, y1);
+				}
+			}
+			if (empty) dst.setRect(0, 0, 0, 0);
+			return true;
+		}
+
+		/**
+		 * @return the number of active sprites
+		 */
+		int size() {
+			return size;
+		}
+
+		GameSprite sprite(int i) {
+			return sprites[i];
+		}
+
+		/**
+		 * @return the world shape of an active sprite which did not move during the
+		 *         cycle, otherwise null
+		 */
+		Shape shape(int i) {
+			return shapes[i];
+		}
+
+		/**
+		 * Blends the captured previous and current transform of an active sprite
+		 * 
+		 * @param  i
+		 *                  the index of the sprite
+		 * @param  alpha
+		 *                  the proportion of the current transform, between 0-1
+		 * @param  dst
+		 *                  the transform to write the result into
+		 * 
+		 * @return       <code>dst</code>
+		 */
+		AffineTransform transformation(int i, double alpha, AffineTransform dst) {
+			int o = i * 6;
+			double b = 1 - alpha;
+			dst.setTransform(b * previous[o] + alpha * current[o], b * previous[o + 1] + alpha * current[o + 1],
+					b * previous[o + 2] + alpha * current[o + 2], b * previous[o + 3] + alpha * current[o + 3],
+					b * previous[o + 4] + alpha * current[o + 4], b * previous[o + 5] + alpha * current[o + 5]);
+			return dst;
+		}
+	}
+
+}
@@ -0,0 +1,427 @@
+package game2d.engine;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import game2d.sprites.ShapeSprite;
+
+/**
+ * Collects the {@link ShapeSprite}s of a pass and draws them sorted by layer
+ * and then by their colours and outline stroke, so that the state of the
+ * {@link Graphics2D} only changes between runs of similar sprites. The fill
+ * stroke is not part of the state as filling does not use a stroke
+ * <p>
+ * A sprite is only moved before an earlier sprite of another state when their
+ * bounds do not overlap, so overlapping sprites are still painted in the order
+ * they were added. Each sprite is given a level above every earlier sprite of
+ * another state it may overlap, found from a grid of the bounds, and the
+ * level is sorted on before the state. Should the levels run out, the sprites
+ * of a layer are drawn in the order they were added
+ * <p>
+ * Within a run, opaque shapes which wind the same way and are not outlined are
+ * appended into a single {@link Path2D} and filled with one call. Outlined,
+ * translucent and even-odd shapes are drawn one at a time with their own
+ * winding rule, so each fill covers the outlines beneath it. Sprites keep the
+ * order they were added in within a run, so a single layer of overlapping
+ * sprites only changes where different colours overlap
+ *
+ * @author Gareth Kmet
+ */
+final class RenderQueue {
+
+	/**
+	 * The number of distinct colours and strokes which may be told apart when
+	 * sorting before the ids are reset
+	 */
+	private static final int STATES = 1 << 11;
+
+	/**
+	 * The number of levels which may be told apart when sorting
+	 */
+	private static final int LEVELS = 1 << 13;
+
+	private static final int LEVEL_SHIFT = 35;
+	private static final long LAYER_MASK = -1L << 48, STATE_MASK = (1L << LEVEL_SHIFT) - 1;
+
+	/**
+	 * Sprites wider or taller than this many cells of the grid are placed above
+	 * every earlier sprite instead of in the grid
+	 */
+	private static final int SPAN = 4;
+
+	private ShapeSprite[] sprites = new ShapeSprite[64];
+	private Shape[] shapes = new Shape[64];
+	private double[] matrices = new double[64 * 6];
+	private long[] keys = new long[64];
+	private byte[] windings = new byte[64];
+	private double[] bounds = new double[64 * 4];
+	private int[] order = new int[64], scratch = new int[64];
+	private int size = 0;
+
+	private final HashMap<Object, Integer> states;
+	private final boolean shared;
+
+	/**
+	 * Open addressing table of the cells of the grid, each holding the highest
+	 * level of the sprites covering it and their state, or -1 if they differ.
+	 * Only the cells stamped with the current stamp are in use
+	 */
+	private long[] cellKeys = new long[256], cellStates = new long[256];
+	private int[] cellLevels = new int[256], cellStamps = new int[256];
+	private int stamp = 0;
+
+	private final AffineTransform transform = new AffineTransform();
+	private final Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, 1024);
+
+	private Color color;
+	private Stroke stroke;
+	private int changes;
+	private boolean outlines;
+
+	RenderQueue() {
+		this.states = new HashMap<Object, Integer>();
+		this.shared = false;
+	}
+
+	/**
+	 * A queue which numbers colours and strokes with a table shared with other
+	 * queues, so that they all sort sprites the same way
+	 * <p>
+	 * Queues on different threads may only share a table if every state they
+	 * add was first given to {@link #intern(ShapeSprite)} while none of them
+	 * were adding. A shared table is never cleared by a flush, only by
+	 * {@link #trim()}
+	 */
+	RenderQueue(HashMap<Object, Integer> states) {
+		this.states = states;
+		this.shared = true;
+	}
+
+	/**
+	 * Numbers the colours and strokes of a sprite without queueing it
+	 */
+	void intern(ShapeSprite s) {
+		id(s.getFcolor());
+		id(s.getoColor());
+		id(s.getOstroke());
+	}
+
+	/**
+	 * Layers are kept in the top 16 bits of the sort key, so only the low 16 bits
+	 * of a layer are told apart. Shapes of the same state are grouped by the way
+	 * they wind last
+	 * 
+	 * @param t
+	 *              the transform of the sprite, copied
+	 */
+	void add(ShapeSprite s, AffineTransform t) {
+		add(s, t, null);
+	}
+
+	/**
+	 * @param t
+	 *                  the transform of the sprite, copied
+	 * @param world
+	 *                  the shape of the sprite already under <code>t</code>, or
+	 *                  null to transform the shape of the sprite when drawn
+	 */
+	void add(ShapeSprite s, AffineTransform t, Shape world) {
+		if (size == sprites.length) {
+			sprites = Arrays.copyOf(sprites, size * 2);
+			shapes = Arrays.copyOf(shapes, size * 2);
+			matrices = Arrays.copyOf(matrices, size * 12);
+			keys = Arrays.copyOf(keys, size * 2);
+			windings = Arrays.copyOf(windings, size * 2);
+			bounds = Arrays.copyOf(bounds, size * 8);
+			order = new int[size * 2];
+			scratch = new int[size * 2];
+		}
+		sprites[size] = s;
+		shapes[size] = world;
+		int o = size * 6;
+		matrices[o] = t.getScaleX();
+		matrices[o + 1] = t.getShearY();
+		matrices[o + 2] = t.getShearX();
+		matrices[o + 3] = t.getScaleY();
+		matrices[o + 4] = t.getTranslateX();
+		matrices[o + 5] = t.getTranslateY();
+		// translucent fills must blend once per shape so are never merged
+		int w = s.getFcolor().getAlpha() == 255 ? s.getWinding() * (int) Math.signum(t.getDeterminant()) : 0;
+		windings[size] = (byte) w;
+		keys[size] = (long) (short) s.getLayer() << 48 | (long) id(s.getFcolor()) << 24
+				| (long) id(s.getoColor()) << 13 | (long) id(s.getOstroke()) << 2 | w + 1;
+
+		Rectangle2D b = s.getBounds();
+		double m00 = t.getScaleX(), m01 = t.getShearX(), m10 = t.getShearY(), m11 = t.getScaleY();
+		double cx = b.getCenterX(), cy = b.getCenterY(), hw = b.getWidth() / 2, hh = b.getHeight() / 2;
+		double x = m00 * cx + m01 * cy + t.getTranslateX(), y = m10 * cx + m11 * cy + t.getTranslateY();
+		double ex = Math.abs(m00) * hw + Math.abs(m01) * hh, ey = Math.abs(m10) * hw + Math.abs(m11) * hh;
+		int q = size * 4;
+		bounds[q] = x - ex;
+		bounds[q + 1] = y - ey;
+		bounds[q + 2] = x + ex;
+		bounds[q + 3] = y + ey;
+		size++;
+	}
+
+	/**
+	 * @return a small number identifying a colour or stroke, equal for equal
+	 *         states
+	 */
+	private int id(Object state) {
+		Integer id = states.get(state);
+		if (id == null) {
+			if (states.size() == STATES - 1) return STATES - 1;
+			id = states.size();
+			states.put(state, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Draws and removes every queued sprite
+	 *
+	 * @param  outlines
+	 *                      if the outlines of the sprites should be drawn
+	 * 
+	 * @return the number of times the colour or stroke of the graphics was set
+	 */
+	int flush(Graphics2D g2, boolean outlines) {
+		this.outlines = outlines;
+		if (!level()) {
+			for (int i = 0; i < size; i++) keys[i] &= LAYER_MASK;
+		}
+		for (int i = 0; i < size; i++) order[i] = i;
+		sort(0, size);
+
+		color = null;
+		stroke = null;
+		changes = 0;
+		path.reset();
+		ShapeSprite run = null;
+		int winding = 0;
+
+		for (int k = 0; k < size; k++) {
+			int i = order[k];
+			ShapeSprite s = sprites[i];
+			// a merged run is outlined after all of it is filled, which would put
+			// each outline above the fills of the later sprites of the run
+			int w = outlines && s.getoColor().getAlpha() != 0 ? 0 : windings[i];
+
+			if (run != null && (w == 0 || w != winding || !sameState(run, s))) {
+				draw(g2, run);
+				run = null;
+			}
+			PathIterator shape;
+			if (shapes[i] != null) {
+				shape = shapes[i].getPathIterator(null);
+			} else {
+				int o = i * 6;
+				transform.setTransform(matrices[o], matrices[o + 1], matrices[o + 2], matrices[o + 3],
+						matrices[o + 4], matrices[o + 5]);
+				shape = s.getShape().getPathIterator(transform);
+			}
+			if (w == 0) {
+				path.setWindingRule(shape.getWindingRule());
+				path.append(shape, false);
+				draw(g2, s);
+				path.setWindingRule(Path2D.WIND_NON_ZERO);
+			} else {
+				path.append(shape, false);
+				run = s;
+				winding = w;
+			}
+		}
+		if (run != null) draw(g2, run);
+
+		Arrays.fill(sprites, 0, size, null);
+		Arrays.fill(shapes, 0, size, null);
+		size = 0;
+		if (!shared) trim();
+		return changes;
+	}
+
+	/**
+	 * Adds to the key of each sprite a level above that of every earlier sprite
+	 * of another state whose bounds share a cell of the grid with it, and at
+	 * least that of every earlier sprite of the same state. Sprites too large
+	 * for the grid raise the lowest level of every later sprite instead
+	 * 
+	 * @return if every sprite was given a level which fits in the key
+	 */
+	private boolean level() {
+		double total = 0;
+		int counted = 0;
+		for (int q = 0; q < size * 4; q += 4) {
+			double extent = Math.max(bounds[q + 2] - bounds[q], bounds[q + 3] - bounds[q + 1]);
+			if (extent > 0 && extent < Double.POSITIVE_INFINITY) {
+				total += extent;
+				counted++;
+			}
+		}
+		// cells twice the size of a typical sprite, which mostly covers one
+		double inverse = counted > 0 ? counted / total / 2 : 1;
+
+		int cells = 0;
+		for (int q = 0; q < size * 4; q += 4) {
+			double w = (bounds[q + 2] - bounds[q]) * inverse, h = (bounds[q + 3] - bounds[q + 1]) * inverse;
+			// also catches infinite and NaN bounds
+			if (w <= SPAN && h <= SPAN) {
+				cells += (int) ((Math.floor(bounds[q + 2] * inverse) - Math.floor(bounds[q] * inverse) + 1)
+						* (Math.floor(bounds[q + 3] * inverse) - Math.floor(bounds[q + 1] * inverse) + 1));
+			}
+		}
+		int capacity = Integer.highestOneBit(Math.max(cells, 64) * 2 - 1) * 2;
+		if (cellKeys.length < capacity) {
+			cellKeys = new long[capacity];
+			cellStates = new long[capacity];
+			cellLevels = new int[capacity];
+			cellStamps = new int[capacity];
+			stamp = 0;
+		}
+		if (++stamp == 0) {
+			Arrays.fill(cellStamps, 0);
+			stamp = 1;
+		}
+		int mask = cellKeys.length - 1;
+
+		int highest = -1, floor = -1;
+		long floorState = 0;
+		for (int i = 0; i < size; i++) {
+			int q = i * 4;
+			long state = keys[i] & STATE_MASK;
+			int level = floor < 0 ? 0 : floor + (floorState == state ? 0 : 1);
+
+			double w = (bounds[q + 2] - bounds[q]) * inverse, h = (bounds[q + 3] - bounds[q + 1]) * inverse;
+			if (!(w <= SPAN && h <= SPAN)) {
+				level = Math.max(level, highest + 1);
+				if (level > floor) {
+					floor = level;
+					floorState = state;
+				} else if (level == floor && floorState != state) {
+					floorState = -1;
+				}
+			} else {
+				long cx0 = (long) Math.floor(bounds[q] * inverse), cx1 = (long) Math.floor(bounds[q + 2] * inverse);
+				long cy0 = (long) Math.floor(bounds[q + 1] * inverse), cy1 = (long) Math.floor(bounds[q + 3] * inverse);
+				for (long cx = cx0; cx <= cx1; cx++) {
+					for (long cy = cy0; cy <= cy1; cy++) {
+						int c = cell(cx, cy, mask);
+						if (cellStamps[c] == stamp) level = Math.max(level, cellLevels[c] + (cellStates[c] == state ? 0 : 1));
+					}
+				}
+				for (long cx = cx0; cx <= cx1; cx++) {
+					for (long cy = cy0; cy <= cy1; cy++) {
+						int c = cell(cx, cy, mask);
+						if (cellStamps[c] != stamp || level > cellLevels[c]) {
+							cellStamps[c] = stamp;
+							cellLevels[c] = level;
+							cellStates[c] = state;
+						} else if (level == cellLevels[c] && cellStates[c] != state) {
+							cellStates[c] = -1;
+						}
+					}
+				}
+			}
+
+			if (level >= LEVELS) return false;
+			highest = Math.max(highest, level);
+			keys[i] |= (long) level << LEVEL_SHIFT;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the slot of a cell in the table, claiming a free one if the cell
+	 *         has none. Cells far enough apart may share a slot, which only
+	 *         raises levels
+	 */
+	private int cell(long cx, long cy, int mask) {
+		long key = cx << 32 ^ (cy & 0xFFFFFFFFL);
+		long h = key * 0x9E3779B97F4A7C15L;
+		int c = (int) (h ^ (h >>> 32)) & mask;
+		while (cellStamps[c] == stamp && cellKeys[c] != key) c = (c + 1) & mask;
+		cellKeys[c] = key;
+		return c;
+	}
+
+	/**
+	 * Forgets every colour and stroke once too many have been numbered to tell
+	 * new ones apart
+	 */
+	void trim() {
+		if (states.size() == STATES - 1) states.clear();
+	}
+
+	private static boolean sameState(ShapeSprite a, ShapeSprite b) {
+		return a.getLayer() == b.getLayer() && a.getFcolor().equals(b.getFcolor())
+				&& a.getoColor().equals(b.getoColor()) && a.getOstroke().equals(b.getOstroke());
+	}
+
+	/**
+	 * Fills and outlines the path in the state of a sprite, then clears the path.
+	 * The fill stroke is not set as filling does not use a stroke
+	 */
+	private void draw(Graphics2D g2, ShapeSprite s) {
+		setColor(g2, s.getFcolor());
+		g2.fill(path);
+		if (outlines) {
+			setStroke(g2, s.getOstroke());
+			setColor(g2, s.getoColor());
+			g2.draw(path);
+		}
+		path.reset();
+	}
+
+	private void setColor(Graphics2D g2, Color c) {
+		if (!c.equals(color)) {
+			g2.setColor(c);
+			color = c;
+			changes++;
+		}
+	}
+
+	private void setStroke(Graphics2D g2, Stroke s) {
+		if (!s.equals(stroke)) {
+			g2.setStroke(s);
+			stroke = s;
+			changes++;
+		}
+	}
+
+	/**
+	 * A stable merge sort of {@link #order} by key, so that sprites with the same
+	 * key keep the order they were added in
+	 */
+	private void sort(int from, int to) {
+		if (to - from < 16) {
+			for (int i = from + 1; i < to; i++) {
+				int v = order[i];
+				int j = i - 1;
+				while (j >= from && keys[order[j]] > keys[v]) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = v;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(from, mid);
+		sort(mid, to);
+		if (keys[order[mid - 1]] <= keys[order[mid]]) return;
+		System.arraycopy(order, from, scratch, from, to - from);
+		for (int i = from, a = from, b = mid; i < to; i++) {
+			order[i] = b >= to || (a < mid && keys[scratch[a]] <= keys[scratch[b]]) ? scratch[a++] : scratch[b++];
+		}
+	}
+
+}
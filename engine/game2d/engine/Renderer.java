@@ -0,0 +1,337 @@
+package game2d.engine;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import game2d.sprites.GameSprite;
+import game2d.sprites.ShapeSprite;
+
+/**
+ * Draws the most recent {@link RenderBuffer.Frame} onto a {@link Graphics2D}
+ * <p>
+ * Shared by every {@link Display} so that passive and active rendering produce
+ * the same image
+ * 
+ * @author Gareth Kmet
+ */
+final class Renderer {
+
+	private final Settings settings;
+	private final RenderBuffer renderBuffer;
+
+	private final AffineTransform interpolated = new AffineTransform();
+	private Camera published, sized;
+	private final SpriteIndex.Selection visible = new SpriteIndex.Selection();
+	private final RenderQueue queue = new RenderQueue();
+	private final QualityGovernor governor;
+	private final TileRenderer tiles;
+	private final TickMetrics metrics;
+	private long painting;
+	private QualityGovernor.Quality quality;
+	private final Events.Paint event = new Events.Paint();
+
+	/**
+	 * The pixels drawn again around a change of the sleepers, so that outlines
+	 * and antialiasing spilling past its bounds are cleared
+	 */
+	private static final int MARGIN = 8;
+
+	private BufferedImage staticLayer;
+	private long layerVersion = -1, layerSleepers = -1;
+	private final AffineTransform layerTransform = new AffineTransform();
+	private final Rectangle2D.Double damage = new Rectangle2D.Double();
+	private Camera layerCamera;
+	private QualityGovernor.Quality layerQuality;
+
+	/**
+	 * @param metrics
+	 *                    receives the time spent preparing and painting each
+	 *                    frame
+	 */
+	Renderer(Settings settings, RenderBuffer renderBuffer, TickMetrics metrics) {
+		this.settings = settings;
+		this.renderBuffer = renderBuffer;
+		this.metrics = metrics;
+		this.governor = new QualityGovernor(settings);
+		this.tiles = new TileRenderer(settings);
+	}
+
+	/**
+	 * @param g2
+	 * @param width
+	 *                  the width of the drawing surface
+	 * @param height
+	 *                  the height of the drawing surface
+	 * @param alpha
+	 *                  the interpolation factor between the previous and the
+	 *                  current transform of the active sprites
+	 */
+	void render(Graphics2D g2, int width, int height, double alpha) {
+		boolean recording = event.isEnabled();
+		if (recording) event.begin();
+		long start = System.nanoTime();
+		quality = governor.quality();
+		g2.setRenderingHints(quality.hints());
+		renderBuffer.viewport(width, height);
+		RenderBuffer.Frame frame = renderBuffer.acquire();
+		Camera camera = camera(frame, width, height);
+		Rectangle2D view = settings.viewCulling ? camera.view() : null;
+		boolean cull = view != null;
+
+		AffineTransform screen = g2.getTransform();
+		g2.transform(camera.transform());
+		draw(g2, width, height);
+		AffineTransform world = g2.getTransform();
+
+		g2.setTransform(screen);
+		long layer = System.nanoTime();
+		drawStaticLayer(g2, frame, camera, width, height);
+		layer = System.nanoTime() - layer;
+		g2.setTransform(world);
+
+		painting = 0;
+		if (settings.tiledRendering) {
+			g2.setTransform(screen);
+			long tiled = System.nanoTime();
+			tiles.render(g2, frame, alpha, camera, width, height, quality);
+			painting = System.nanoTime() - tiled;
+		} else if (cull) {
+			frame.index().query(view.getMinX(), view.getMinY(), view.getMaxX(), view.getMaxY(), visible);
+			iterate(g2, frame, alpha, visible);
+		} else {
+			iterate(g2, frame, alpha);
+		}
+		long time = System.nanoTime() - start, paint = layer + painting;
+		metrics.record(TickMetrics.Phase.PAINT, paint);
+		metrics.record(TickMetrics.Phase.RENDER_PREPARE, time - paint);
+		governor.frame(time);
+
+		if (recording) {
+			event.end();
+			if (event.shouldCommit()) {
+				event.tick = frame.cycle();
+				event.activeSprites = frame.size();
+				event.drawnSprites = cull && !settings.tiledRendering ? visible.size() : frame.size();
+				event.staticSprites = frame.statics().size() + frame.sleepers().size();
+				event.quality = quality.name();
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Blits the static sprites and the sleepers from an offscreen layer,
+	 * rasterizing them again only if the set of static sprites, the camera or
+	 * the size of the surface has changed since the layer was last drawn. If
+	 * only the sleepers changed, just the part of the layer they changed is
+	 * drawn again
+	 * 
+	 * @param g2
+	 *                  a graphics with the screen (untransformed) transform
+	 */
+	private void drawStaticLayer(Graphics2D g2, RenderBuffer.Frame frame, Camera camera, int width, int height) {
+		AffineTransform screen = g2.getTransform();
+		double sx = screen.getScaleX(), sy = screen.getScaleY();
+		int lw = (int) Math.ceil(width * sx), lh = (int) Math.ceil(height * sy);
+		if (lw <= 0 || lh <= 0) return;
+
+		if (staticLayer == null || staticLayer.getWidth() != lw || staticLayer.getHeight() != lh) {
+			if (staticLayer != null) staticLayer.flush();
+			staticLayer = g2.getDeviceConfiguration().createCompatibleImage(lw, lh, Transparency.TRANSLUCENT);
+			layerVersion = -1;
+		}
+
+		boolean redraw = layerVersion != frame.staticsVersion() || layerCamera != camera || layerQuality != quality;
+		if (!redraw && layerSleepers != frame.sleepersVersion()) {
+			redraw = camera.inverse() == null || !frame.damage(layerSleepers, damage);
+			if (!redraw) redrawDamage(frame, camera, sx, sy, lw, lh);
+			layerSleepers = frame.sleepersVersion();
+		}
+
+		if (redraw) {
+			layerVersion = frame.staticsVersion();
+			layerSleepers = frame.sleepersVersion();
+			layerCamera = camera;
+			layerQuality = quality;
+
+			Graphics2D lg = staticLayer.createGraphics();
+			try {
+				lg.setComposite(AlphaComposite.Clear);
+				lg.fillRect(0, 0, lw, lh);
+				lg.setComposite(AlphaComposite.SrcOver);
+				lg.setRenderingHints(quality.hints());
+				lg.scale(sx, sy);
+				lg.transform(camera.transform());
+				Rectangle2D view = settings.viewCulling ? camera.view() : null;
+				if (view != null) {
+					iterate(lg, frame, view);
+				} else {
+					iterate(lg, frame);
+				}
+			} finally {
+				lg.dispose();
+			}
+		}
+
+		g2.drawImage(staticLayer, 0, 0, width, height, null);
+	}
+
+	/**
+	 * Clears and draws again the pixels of the static layer over
+	 * {@link #damage}, from the static sprites and sleepers inside it
+	 */
+	private void redrawDamage(RenderBuffer.Frame frame, Camera camera, double sx, double sy, int lw, int lh) {
+		layerTransform.setToScale(sx, sy);
+		layerTransform.concatenate(camera.transform());
+		Rectangle pixels = layerTransform.createTransformedShape(damage).getBounds();
+		pixels.grow(MARGIN, MARGIN);
+		Rectangle.intersect(pixels, new Rectangle(0, 0, lw, lh), pixels);
+		if (pixels.isEmpty()) return;
+
+		Graphics2D lg = staticLayer.createGraphics();
+		try {
+			lg.clipRect(pixels.x, pixels.y, pixels.width, pixels.height);
+			lg.setComposite(AlphaComposite.Clear);
+			lg.fillRect(pixels.x, pixels.y, pixels.width, pixels.height);
+			lg.setComposite(AlphaComposite.SrcOver);
+			lg.setRenderingHints(quality.hints());
+			lg.transform(layerTransform);
+
+			AffineTransform inverse = new AffineTransform(camera.inverse());
+			inverse.scale(1 / sx, 1 / sy);
+			iterate(lg, frame, inverse.createTransformedShape(pixels).getBounds2D());
+		} finally {
+			lg.dispose();
+		}
+	}
+
+	/**
+	 * @return the camera of the frame, fitted to the surface if it was published
+	 *         for another size, reusing the fitted camera while neither changes
+	 */
+	private Camera camera(RenderBuffer.Frame frame, int width, int height) {
+		Camera camera = frame.camera();
+		if (camera != published || sized.getWidth() != width || sized.getHeight() != height) {
+			published = camera;
+			sized = camera.resize(width, height);
+		}
+		return sized;
+	}
+
+	private void flush(Graphics2D g2) {
+		long start = System.nanoTime();
+		queue.flush(g2, quality.outlines());
+		painting += System.nanoTime() - start;
+	}
+
+	private void iterate(Graphics2D g2, RenderBuffer.Frame frame) {
+		List<GameSprite> statics = frame.statics();
+		for (int i = 0; i < statics.size(); i++) {
+			if (statics.get(i) instanceof ShapeSprite shape) {
+				queue.add(shape, shape.transformation(), frame.staticShape(i));
+			}
+		}
+		SleeperSet sleepers = frame.sleepers();
+		for (int i = 0; i < sleepers.size(); i++) {
+			queue.add(sleepers.sprite(i), sleepers.sprite(i).transformation(), sleepers.shape(i));
+		}
+		flush(g2);
+	}
+
+	/**
+	 * Draws the static sprites and sleepers overlapping a part of the world
+	 */
+	private void iterate(Graphics2D g2, RenderBuffer.Frame frame, Rectangle2D view) {
+		List<GameSprite> statics = frame.statics();
+		frame.staticIndex().query(view.getMinX(), view.getMinY(), view.getMaxX(), view.getMaxY(), visible);
+		for (int k = 0; k < visible.size(); k++) {
+			int i = visible.get(k);
+			if (statics.get(i) instanceof ShapeSprite shape) {
+				queue.add(shape, shape.transformation(), frame.staticShape(i));
+			}
+		}
+		SleeperSet sleepers = frame.sleepers();
+		sleepers.query(view.getMinX(), view.getMinY(), view.getMaxX(), view.getMaxY(), visible);
+		for (int k = 0; k < visible.size(); k++) {
+			int i = visible.get(k);
+			queue.add(sleepers.sprite(i), sleepers.sprite(i).transformation(), sleepers.shape(i));
+		}
+		flush(g2);
+	}
+
+	private void iterate(Graphics2D g2, RenderBuffer.Frame frame, double alpha) {
+		for (int i = 0; i < frame.size(); i++) {
+			if (frame.sprite(i) instanceof ShapeSprite shape) {
+				queue.add(shape, frame.transformation(i, alpha, interpolated), frame.shape(i));
+			}
+		}
+		flush(g2);
+	}
+
+	private void iterate(Graphics2D g2, RenderBuffer.Frame frame, double alpha, SpriteIndex.Selection selection) {
+		for (int k = 0; k < selection.size(); k++) {
+			int i = selection.get(k);
+			if (frame.sprite(i) instanceof ShapeSprite shape) {
+				queue.add(shape, frame.transformation(i, alpha, interpolated), frame.shape(i));
+			}
+		}
+		flush(g2);
+	}
+
+	/**
+	 * Draws tiles on a pool owned by the caller, which is not shut down by
+	 * {@link #destroy()}
+	 */
+	void setPool(ForkJoinPool pool) {
+		tiles.setPool(pool);
+	}
+
+	/**
+	 * Stops the threads used to draw tiles
+	 */
+	void destroy() {
+		tiles.destroy();
+	}
+
+	float f = 0;
+
+	private void draw(Graphics2D g2, int width, int height) {
+
+		Shape xaxis = new Rectangle(-45, -1, 45 * 2, 2);
+		xaxis = AffineTransform.getScaleInstance(1, 1 / 5.).createTransformedShape(xaxis);
+		g2.setColor(Color.black);
+		g2.fill(xaxis);
+
+		Shape yaxis = new Rectangle(-1, -45, 2, 45 * 2);
+		yaxis = AffineTransform.getScaleInstance(1 / 5., 1).createTransformedShape(yaxis);
+		g2.setColor(Color.black);
+		g2.fill(yaxis);
+
+		Rectangle r = new Rectangle(0, 0, 3, 3);
+		AffineTransform t = new AffineTransform();
+		t.rotate(f, 0, 0);
+		t.scale(1.5, 1);
+
+		f += 0.01;
+		Shape xr = t.createTransformedShape(r);
+		g2.setStroke(new BasicStroke(0.1f));
+		g2.setColor(Color.gray);
+		g2.fill(xr);
+		g2.setColor(Color.green);
+		g2.draw(xr);
+
+		g2.setColor(Color.red);
+		g2.fillOval(width / 2 - 2, height / 2 - 2, 4, 4);
+	}
+
+}
@@ -0,0 +1,250 @@
+package game2d.engine;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Runs the cycles of a {@link TickRecorder} log again as fast as possible,
+ * without a window or a {@link Timer}
+ * <p>
+ * The game is rebuilt with the recorded settings by a {@link Scenario}, which
+ * must add the same objects the recorded game started with. Each cycle is then
+ * given its recorded seed and checked against the recorded number of objects
+ * and the classes of the objects spawned, so a replay which no longer matches
+ * the recording is reported at the first cycle it differs. Replaying can stop
+ * just before a cycle, so that a profiler can be attached to a single slow
+ * cycle. A log cut short, as by a crash of the recorded game, is replayed up to
+ * its last whole record
+ *
+ * @author Gareth Kmet
+ */
+public final class Replay {
+
+	/**
+	 * Builds the starting state of a recorded game
+	 *
+	 * @author Gareth Kmet
+	 */
+	@FunctionalInterface
+	public interface Scenario {
+		public void setup(HeadlessGame game);
+	}
+
+	/**
+	 * @param ticks
+	 *                         the number of cycles replayed
+	 * @param nanos
+	 *                         the time the replay took
+	 * @param divergence
+	 *                         the first cycle which did not match the recording,
+	 *                         or -1
+	 * @param slowestTick
+	 *                         the cycle which took the longest when recorded
+	 * @param slowestNanos
+	 *                         the time it took when recorded
+	 * @param slowestReplay
+	 *                         the cycle which took the longest to replay
+	 * @param slowestReplayNanos
+	 *                         the time it took to replay
+	 */
+	public record Result(long ticks, long nanos, long divergence, long slowestTick, long slowestNanos,
+			long slowestReplay, long slowestReplayNanos) {}
+
+	private final MappedByteBuffer log;
+	private final int timePerCycle, logicChunkSize;
+	private final boolean parallelLogic;
+	private final long seed;
+	private final Physics.BroadphaseType broadphase;
+	private final float broadphaseCellSize, restitution, sleepSpeed;
+	private final int solverIterations, sleepCycles;
+	private final int start;
+
+	/**
+	 * @param  path
+	 *                         a log written by a {@link TickRecorder}
+	 *
+	 * @throws IOException
+	 *                         if the file can not be read or is not a log
+	 */
+	public Replay(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			this.log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (log.remaining() < 44 || log.getInt() != TickRecorder.MAGIC) throw new IOException("Not a tick log");
+		int version = log.getShort();
+		if (version != TickRecorder.VERSION) throw new IOException("Unsupported tick log version " + version);
+		this.timePerCycle = log.getInt();
+		this.parallelLogic = log.get() != 0;
+		this.logicChunkSize = log.getInt();
+		this.seed = log.getLong();
+		int broadphase = log.get();
+		Physics.BroadphaseType[] types = Physics.BroadphaseType.values();
+		if (broadphase < 0 || broadphase >= types.length) throw new IOException("Unknown broadphase " + broadphase);
+		this.broadphase = types[broadphase];
+		this.broadphaseCellSize = log.getFloat();
+		this.solverIterations = log.getInt();
+		this.restitution = log.getFloat();
+		this.sleepCycles = log.getInt();
+		this.sleepSpeed = log.getFloat();
+		this.start = log.position();
+	}
+
+	/**
+	 * @return new settings the recorded game was run with
+	 */
+	public Settings settings() {
+		Settings s = new Settings();
+		s.timePerCycle = timePerCycle;
+		s.parallelLogic = parallelLogic;
+		s.logicChunkSize = logicChunkSize;
+		s.seed = seed;
+		s.broadphase = broadphase;
+		s.broadphaseCellSize = broadphaseCellSize;
+		s.solverIterations = solverIterations;
+		s.restitution = restitution;
+		s.sleepCycles = sleepCycles;
+		s.sleepSpeed = sleepSpeed;
+		s.jmxMetrics = false;
+		return s;
+	}
+
+	/**
+	 * Replays the whole log
+	 */
+	public Result run(Scenario scenario) {
+		return run(scenario, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param  scenario
+	 *                      builds the starting state of the game
+	 * @param  until
+	 *                      the last cycle to replay
+	 *
+	 * @return          how the replay went
+	 */
+	public Result run(Scenario scenario, long until) {
+		HeadlessGame game = new HeadlessGame(settings());
+		try {
+			scenario.setup(game);
+			return replay(game, until);
+		} finally {
+			game.destroy();
+		}
+	}
+
+	private Result replay(HeadlessGame game, long until) {
+		ByteBuffer in = log.duplicate().position(start);
+		ArrayList<String> classes = new ArrayList<String>();
+		ArrayList<Class<?>> spawned = new ArrayList<Class<?>>();
+		int[] ids = new int[16];
+		game.logic().setSpawnClasses(spawned);
+		long ticks = 0, divergence = -1;
+		long slowestTick = -1, slowestNanos = -1, slowestReplay = -1, slowestReplayNanos = -1;
+
+		long begin = System.nanoTime();
+		while (in.hasRemaining()) {
+			long tick, seed, nanos;
+			int objects, spawns;
+			try {
+				byte type = in.get();
+				if (type == TickRecorder.CLASS) {
+					int id = (int) getVarint(in);
+					byte[] name = new byte[(int) getVarint(in)];
+					in.get(name);
+					while (classes.size() <= id) classes.add(null);
+					classes.set(id, new String(name, StandardCharsets.UTF_8));
+					continue;
+				}
+				if (type != TickRecorder.TICK) throw new IllegalStateException("Corrupt tick log at " + in.position());
+
+				tick = getVarint(in);
+				seed = in.getLong();
+				objects = (int) getVarint(in);
+				nanos = getVarint(in);
+				spawns = (int) getVarint(in);
+				if (ids.length < spawns) ids = new int[Math.max(spawns, ids.length * 2)];
+				for (int i = 0; i < spawns; i++) ids[i] = (int) getVarint(in);
+			} catch (BufferUnderflowException e) {
+				// the log ends part way through a record, which is not replayed
+				break;
+			}
+			if (tick > until) break;
+
+			spawned.clear();
+			game.logic().seed(seed);
+			long t = System.nanoTime();
+			game.cycle();
+			t = System.nanoTime() - t;
+			ticks++;
+
+			if (divergence < 0 && !matches(game.getMetrics(), objects, spawns, ids, classes, spawned)) {
+				divergence = tick;
+			}
+			if (nanos > slowestNanos) {
+				slowestNanos = nanos;
+				slowestTick = tick;
+			}
+			if (t > slowestReplayNanos) {
+				slowestReplayNanos = t;
+				slowestReplay = tick;
+			}
+		}
+		return new Result(ticks, System.nanoTime() - begin, divergence, slowestTick, slowestNanos, slowestReplay,
+				slowestReplayNanos);
+	}
+
+	/**
+	 * @return if a replayed cycle ended with the recorded number of objects and
+	 *         spawned objects of the recorded classes
+	 */
+	private static boolean matches(TickMetrics m, int objects, int spawns, int[] ids, ArrayList<String> classes,
+			ArrayList<Class<?>> spawned) {
+		if (m.getObjects() != objects || spawned.size() != spawns) return false;
+		for (int i = 0; i < spawns; i++) {
+			String name = ids[i] < classes.size() ? classes.get(ids[i]) : null;
+			if (!spawned.get(i).getName().equals(name)) return false;
+		}
+		return true;
+	}
+
+	private static long getVarint(ByteBuffer in) {
+		long v = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = in.get();
+			v |= (long) (b & 0x7F) << shift;
+			if (b >= 0) return v;
+		}
+	}
+
+	/**
+	 * @param args
+	 *                 the log, the name of a {@link Scenario} class with a public
+	 *                 no argument constructor, and optionally the last cycle to
+	 *                 replay
+	 */
+	public static void main(String args[]) throws Exception {
+		if (args.length < 2) {
+			System.err.println("usage: Replay <log> <scenario class> [last tick]");
+			return;
+		}
+		Replay replay = new Replay(Path.of(args[0]));
+		Scenario scenario = (Scenario) Class.forName(args[1]).getConstructor().newInstance();
+		long until = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+
+		Result r = replay.run(scenario, until);
+		System.out.printf("%d cycles replayed in %.1f ms%n", r.ticks(), r.nanos() / 1e6);
+		System.out.printf("slowest recorded cycle %d took %.3f ms%n", r.slowestTick(), r.slowestNanos() / 1e6);
+		System.out.printf("slowest replayed cycle %d took %.3f ms%n", r.slowestReplay(),
+				r.slowestReplayNanos() / 1e6);
+		if (r.divergence() >= 0) System.out.println("replay diverged from the recording at cycle " + r.divergence());
+	}
+
+}
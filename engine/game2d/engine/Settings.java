@@ -8,6 +8,46 @@ public class Settings {
 	@Unit.Measurement(unit = Unit.MILLISECOND)
 	int timePerCycle = 25;
 
+	@Unit.Measurement(unit = Unit.MILLISECOND)
+	int timePerFrame = 16;
+
+	boolean fixedTimestep = true;
+	int maxCyclesPerFrame = 5;
+	@Unit.Measurement(unit = Unit.MILLISECOND)
+	int worldTickBudget = 10;
+
+	boolean activeRendering = true;
+
+	boolean jmxMetrics = true;
+
+	long seed = System.nanoTime();
+
+	String recordPath = null;
+
+	int snapshotBytesPerCycle = 4 << 20;
+
+	boolean adaptiveQuality = true;
+	boolean viewCulling = true;
+	@Unit.Measurement(unit = Unit.METRE)
+	float cullCellSize = 4;
+	boolean tiledRendering = false;
+	@Unit.Measurement(unit = Unit.PIXEL)
+	int renderTileSize = 128;
+
+	boolean parallelLogic = false;
+	int logicChunkSize = 512;
+
+	Physics.BroadphaseType broadphase = Physics.BroadphaseType.UNIFORM_GRID;
+	@Unit.Measurement(unit = Unit.METRE)
+	float broadphaseCellSize = 2;
+
+	int solverIterations = 8;
+	int solverParallelContacts = 1024;
+	float restitution = 0.2f;
+	int sleepCycles = 60;
+	@Unit.Measurement(unit = Unit.METRE_SECOND_VELOCITY)
+	float sleepSpeed = 0.05f;
+
 	@Unit.Measurement(unit = Unit.RADIAN, var = "rot")
 	@Unit.Measurement(unit = Unit.PIXEL, var = "anchorX")
 	@Unit.Measurement(unit = Unit.PIXEL, var = "anchorY")
@@ -0,0 +1,24 @@
+package game2d.engine;
+
+/**
+ * What the {@link Timer} steps and draws, independent of any window
+ * 
+ * @author Gareth Kmet
+ */
+public interface Simulation {
+
+	/**
+	 * Steps the logic and physics by one cycle
+	 * 
+	 * @return false once the game has ended
+	 */
+	public boolean cycle();
+
+	/**
+	 * @param alpha
+	 *                  the fraction of a cycle that has elapsed since the last
+	 *                  call to {@link #cycle()}, between 0-1
+	 */
+	public void render(double alpha);
+
+}
@@ -0,0 +1,248 @@
+package game2d.engine;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import game2d.sprites.ShapeSprite;
+
+/**
+ * The sprites of sleeping objects, added and removed one object at a time.
+ * Holds the visible sleepers drawn with the statics and the physical sleepers
+ * the awake bodies are tested against
+ * <p>
+ * Unlike a {@link SpriteIndex}, which is built once and then only read, this
+ * keeps each sprite in a chain of the cell holding the centre of its bounds, so
+ * that an object falling asleep or waking only touches its own chain. Sprites
+ * larger than a cell are kept in a chain of their own and tested on every
+ * query. A removed sprite is replaced by the last one, so the sprites are not
+ * kept in the order they were added
+ *
+ * @author Gareth Kmet
+ */
+final class SleeperSet {
+
+	private final double cellSize;
+
+	private int[] handles = new int[64];
+	private ShapeSprite[] sprites = new ShapeSprite[64];
+	private Shape[] shapes = new Shape[64];
+	private double[] minX = new double[64], minY = new double[64], maxX = new double[64], maxY = new double[64];
+	private int size = 0;
+
+	/**
+	 * The first sprite of each bucket and of the large sprites, which come
+	 * last, and the links of each sprite in its chain, -1 ending a chain
+	 */
+	private int[] heads = new int[17];
+	private int[] next = new int[64], prev = new int[64], bucket = new int[64];
+	private int mask = 15;
+
+	/**
+	 * Per {@link Handles#index}, the slot of its sprite plus one, or 0
+	 */
+	private int[] slots = new int[64];
+
+	/**
+	 * @param cellSize
+	 *                     the width of a cell in metres
+	 */
+	SleeperSet(double cellSize) {
+		this.cellSize = cellSize;
+		Arrays.fill(heads, -1);
+	}
+
+	/**
+	 * Adds the sprite of an object, in place of any it had
+	 *
+	 * @param shape
+	 *                   the world shape of the sprite
+	 */
+	void add(int handle, ShapeSprite sprite, Shape shape, double x0, double y0, double x1, double y1) {
+		remove(handle, null);
+		if (size == handles.length) {
+			int length = size * 2;
+			handles = Arrays.copyOf(handles, length);
+			sprites = Arrays.copyOf(sprites, length);
+			shapes = Arrays.copyOf(shapes, length);
+			minX = Arrays.copyOf(minX, length);
+			minY = Arrays.copyOf(minY, length);
+			maxX = Arrays.copyOf(maxX, length);
+			maxY = Arrays.copyOf(maxY, length);
+			next = Arrays.copyOf(next, length);
+			prev = Arrays.copyOf(prev, length);
+			bucket = Arrays.copyOf(bucket, length);
+		}
+		int index = Handles.index(handle);
+		if (index >= slots.length) slots = Arrays.copyOf(slots, Math.max(index + 1, slots.length * 2));
+
+		int i = size++;
+		handles[i] = handle;
+		sprites[i] = sprite;
+		shapes[i] = shape;
+		minX[i] = x0;
+		minY[i] = y0;
+		maxX[i] = x1;
+		maxY[i] = y1;
+		slots[index] = i + 1;
+		if (size > mask + 1) {
+			rehash((mask + 1) * 2);
+		} else {
+			link(i);
+		}
+	}
+
+	/**
+	 * Removes the sprite of an object
+	 *
+	 * @param  removed
+	 *                     receives the bounds of the removed sprite, or null
+	 *
+	 * @return         if the object had a sprite
+	 */
+	boolean remove(int handle, Rectangle2D removed) {
+		int index = Handles.index(handle);
+		if (index >= slots.length || slots[index] == 0 || handles[slots[index] - 1] != handle) return false;
+		int i = slots[index] - 1;
+		slots[index] = 0;
+		if (removed != null) removed.setRect(minX[i], minY[i], maxX[i] - minX[i], maxY[i] - minY[i]);
+
+		unlink(i);
+		int last = --size;
+		if (i != last) {
+			unlink(last);
+			handles[i] = handles[last];
+			sprites[i] = sprites[last];
+			shapes[i] = shapes[last];
+			minX[i] = minX[last];
+			minY[i] = minY[last];
+			maxX[i] = maxX[last];
+			maxY[i] = maxY[last];
+			slots[Handles.index(handles[i])] = i + 1;
+			link(i);
+		}
+		sprites[last] = null;
+		shapes[last] = null;
+		return true;
+	}
+
+	/**
+	 * Makes this a copy of another set
+	 */
+	void copy(SleeperSet from) {
+		int length = from.handles.length;
+		handles = Arrays.copyOf(from.handles, length);
+		sprites = Arrays.copyOf(from.sprites, length);
+		shapes = Arrays.copyOf(from.shapes, length);
+		minX = Arrays.copyOf(from.minX, length);
+		minY = Arrays.copyOf(from.minY, length);
+		maxX = Arrays.copyOf(from.maxX, length);
+		maxY = Arrays.copyOf(from.maxY, length);
+		next = Arrays.copyOf(from.next, length);
+		prev = Arrays.copyOf(from.prev, length);
+		bucket = Arrays.copyOf(from.bucket, length);
+		heads = Arrays.copyOf(from.heads, from.heads.length);
+		slots = Arrays.copyOf(from.slots, from.slots.length);
+		mask = from.mask;
+		size = from.size;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int handle(int i) {
+		return handles[i];
+	}
+
+	ShapeSprite sprite(int i) {
+		return sprites[i];
+	}
+
+	/**
+	 * @return the world shape of a sprite, or null if none was added
+	 */
+	Shape shape(int i) {
+		return shapes[i];
+	}
+
+	/**
+	 * Finds every sprite whose bounds overlap a rectangle
+	 *
+	 * @param out
+	 *                receives the slots of the sprites, in ascending order
+	 */
+	void query(double x0, double y0, double x1, double y1, SpriteIndex.Selection out) {
+		out.size = 0;
+		if (size == 0) return;
+
+		long cx0 = cell(x0) - 1, cx1 = cell(x1) + 1, cy0 = cell(y0) - 1, cy1 = cell(y1) + 1;
+		long cells = (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+		if (cells <= 0 || cells > mask + 1) {
+			for (int i = 0; i < size; i++) {
+				if (overlaps(i, x0, y0, x1, y1)) out.add(i);
+			}
+			return;
+		}
+
+		int buckets = out.cells((int) cells + 1);
+		int[] bs = out.cells;
+		for (long cx = cx0; cx <= cx1; cx++) {
+			for (long cy = cy0; cy <= cy1; cy++) {
+				bs[buckets++] = hash(cx, cy);
+			}
+		}
+		bs[buckets++] = mask + 1;
+		// cells may share a bucket, which must only be visited once
+		Arrays.sort(bs, 0, buckets);
+		for (int c = 0; c < buckets; c++) {
+			int b = bs[c];
+			if (c > 0 && b == bs[c - 1]) continue;
+			for (int i = heads[b]; i >= 0; i = next[i]) {
+				if (overlaps(i, x0, y0, x1, y1)) out.add(i);
+			}
+		}
+		Arrays.sort(out.items, 0, out.size);
+	}
+
+	private void rehash(int table) {
+		heads = new int[table + 1];
+		Arrays.fill(heads, -1);
+		mask = table - 1;
+		for (int i = 0; i < size; i++) link(i);
+	}
+
+	private void link(int i) {
+		double w = maxX[i] - minX[i], h = maxY[i] - minY[i];
+		// also catches infinite and NaN bounds
+		int b = w <= cellSize * 2 && h <= cellSize * 2 ? hash(cell(minX[i] + w / 2), cell(minY[i] + h / 2)) : mask + 1;
+		bucket[i] = b;
+		prev[i] = -1;
+		next[i] = heads[b];
+		if (heads[b] >= 0) prev[heads[b]] = i;
+		heads[b] = i;
+	}
+
+	private void unlink(int i) {
+		if (prev[i] >= 0) {
+			next[prev[i]] = next[i];
+		} else {
+			heads[bucket[i]] = next[i];
+		}
+		if (next[i] >= 0) prev[next[i]] = prev[i];
+	}
+
+	private boolean overlaps(int i, double x0, double y0, double x1, double y1) {
+		return minX[i] <= x1 && maxX[i] >= x0 && minY[i] <= y1 && maxY[i] >= y0;
+	}
+
+	private long cell(double v) {
+		return (long) Math.floor(v / cellSize);
+	}
+
+	private int hash(long cx, long cy) {
+		long h = (cx * 0x9E3779B97F4A7C15L) ^ (cy * 0xC2B2AE3D27D4EB4FL);
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+}
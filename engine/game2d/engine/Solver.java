@@ -0,0 +1,334 @@
+package game2d.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import game2d.physics.Contact;
+
+/**
+ * Resolves the contacts found by the {@link Physics} with sequential impulses
+ * <p>
+ * Bodies are the rows of the {@link Components}, any other body can not be
+ * pushed. Every cycle the bodies joined by contacts are grouped into islands
+ * which share no pushable body, so the islands are solved in parallel on a
+ * work-stealing pool. An island of bodies joined by contacts whose bodies have
+ * all been slow for {@link Settings#sleepCycles} cycles is put to sleep: its
+ * velocities are zeroed and it is neither solved nor moved until an awake body
+ * touches it or its velocity is set again. A body touching nothing is never
+ * put to sleep.
+ * 
+ * @author Gareth Kmet
+ */
+final class Solver {
+
+	/**
+	 * The depth contacts are allowed to overlap without being pushed apart
+	 */
+	private static final float SLOP = 0.01f;
+
+	/**
+	 * The proportion of the remaining overlap removed each cycle
+	 */
+	private static final float CORRECTION = 0.4f;
+
+	private final Settings settings;
+	private final Components components;
+
+	private ForkJoinPool pool;
+	private boolean sharedPool = false;
+
+	/**
+	 * Per body, its row or -1 if it can not be pushed, and its union-find
+	 * parent
+	 */
+	private int[] rows = new int[64], parents = new int[64];
+
+	/**
+	 * Per body, the island it belongs to or -1
+	 */
+	private int[] islandOf = new int[64];
+
+	/**
+	 * Bodies and contacts ordered by island, with the start of each island in
+	 * the order
+	 */
+	private int[] bodyOrder = new int[64], bodyStart = new int[64];
+	private int[] contactOrder = new int[64], contactStart = new int[64];
+	private int[] contactIsland = new int[64];
+	private boolean[] islandAwake = new boolean[64];
+	private int islands = 0;
+
+	/**
+	 * Per contact, the normal velocity the solver aims for
+	 */
+	private float[] targets = new float[64];
+
+	private ArrayList<Contact> contacts;
+	private int[] contactA, contactB;
+
+	Solver(Settings settings, Components components) {
+		this.settings = settings;
+		this.components = components;
+	}
+
+	/**
+	 * @param bodyRows
+	 *                     the row of each body, or -1 if it can not be pushed
+	 * @param bodies
+	 *                     the number of bodies
+	 * @param contacts
+	 *                     the touching contacts
+	 * @param contactA
+	 *                     the first body of each contact
+	 * @param contactB
+	 *                     the second body of each contact
+	 */
+	void solve(int[] bodyRows, int bodies, ArrayList<Contact> contacts, int[] contactA, int[] contactB) {
+		this.contacts = contacts;
+		this.contactA = contactA;
+		this.contactB = contactB;
+		int n = contacts.size();
+
+		if (rows.length < bodies) {
+			int length = Math.max(bodies, rows.length * 2);
+			rows = new int[length];
+			parents = new int[length];
+			islandOf = new int[length];
+			bodyOrder = new int[length];
+			bodyStart = new int[length + 1];
+			islandAwake = new boolean[length];
+			contactStart = new int[length + 1];
+		}
+		if (contactOrder.length < n) {
+			int length = Math.max(n, contactOrder.length * 2);
+			contactOrder = new int[length];
+			contactIsland = new int[length];
+			targets = new float[length];
+		}
+
+		System.arraycopy(bodyRows, 0, rows, 0, bodies);
+		for (int i = 0; i < bodies; i++) parents[i] = i;
+		for (int k = 0; k < n; k++) {
+			int a = contactA[k], b = contactB[k];
+			if (rows[a] >= 0 && rows[b] >= 0) union(a, b);
+		}
+
+		islands = 0;
+		for (int i = 0; i < bodies; i++) { if (rows[i] >= 0 && find(i) == i) islandOf[i] = islands++; }
+		for (int i = 0; i < bodies; i++) { if (rows[i] >= 0 && find(i) != i) islandOf[i] = islandOf[find(i)]; }
+
+		Arrays.fill(bodyStart, 0, islands + 1, 0);
+		for (int i = 0; i < bodies; i++) { if (rows[i] >= 0) bodyStart[islandOf[i] + 1]++; }
+		for (int i = 0; i < islands; i++) bodyStart[i + 1] += bodyStart[i];
+		for (int i = 0, next[] = Arrays.copyOf(bodyStart, islands); i < bodies; i++) {
+			if (rows[i] >= 0) bodyOrder[next[islandOf[i]]++] = i;
+		}
+
+		Arrays.fill(contactStart, 0, islands + 1, 0);
+		for (int k = 0; k < n; k++) {
+			int a = contactA[k], b = contactB[k];
+			contactIsland[k] = rows[a] >= 0 ? islandOf[a] : rows[b] >= 0 ? islandOf[b] : -1;
+			if (contactIsland[k] >= 0) contactStart[contactIsland[k] + 1]++;
+		}
+		for (int i = 0; i < islands; i++) contactStart[i + 1] += contactStart[i];
+		for (int k = 0, next[] = Arrays.copyOf(contactStart, islands); k < n; k++) {
+			if (contactIsland[k] >= 0) contactOrder[next[contactIsland[k]]++] = k;
+		}
+
+		for (int i = 0; i < islands; i++) islandAwake[i] = wake(i);
+
+		if (islands > 1 && n >= settings.solverParallelContacts) {
+			if (pool == null) pool = new ForkJoinPool();
+			pool.invoke(new IslandTask(0, islands));
+		} else {
+			for (int i = 0; i < islands; i++) solveIsland(i);
+		}
+
+		this.contacts = null;
+	}
+
+	/**
+	 * @return if the island has an awake body, in which case every body in it
+	 *         is woken
+	 */
+	private boolean wake(int island) {
+		boolean awake = false;
+		for (int i = bodyStart[island]; i < bodyStart[island + 1] && !awake; i++) {
+			int r = rows[bodyOrder[i]];
+			awake = components.rest[r] < settings.sleepCycles || components.vx[r] != 0 || components.vy[r] != 0
+					|| components.omega[r] != 0;
+		}
+		if (awake) {
+			for (int i = bodyStart[island]; i < bodyStart[island + 1]; i++) {
+				int r = rows[bodyOrder[i]];
+				if (components.rest[r] >= settings.sleepCycles) components.rest[r] = 0;
+			}
+		}
+		return awake;
+	}
+
+	/**
+	 * Solves a range of islands, splitting it until it is a single island
+	 */
+	private final class IslandTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		IslandTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1 || contactStart[to] - contactStart[from] < settings.solverParallelContacts / 4) {
+				for (int i = from; i < to; i++) solveIsland(i);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new IslandTask(from, mid), new IslandTask(mid, to));
+			}
+		}
+	}
+
+	private void solveIsland(int island) {
+		if (!islandAwake[island]) return;
+
+		final float[] vx = components.vx, vy = components.vy, x = components.x, y = components.y;
+		final float[] invMass = components.invMass;
+		final int from = contactStart[island], to = contactStart[island + 1];
+
+		for (int k = from; k < to; k++) {
+			int ci = contactOrder[k];
+			Contact c = contacts.get(ci);
+			int ra = rows[contactA[ci]], rb = rows[contactB[ci]];
+			float nx = c.getNormalX(), ny = c.getNormalY();
+			float vn = velocity(vx, ra, rb) * nx + velocity(vy, ra, rb) * ny;
+			targets[ci] = vn < 0 ? -settings.restitution * vn : 0;
+
+			float j = c.getImpulse();
+			if (ra >= 0) {
+				vx[ra] -= j * nx * invMass[ra];
+				vy[ra] -= j * ny * invMass[ra];
+			}
+			if (rb >= 0) {
+				vx[rb] += j * nx * invMass[rb];
+				vy[rb] += j * ny * invMass[rb];
+			}
+		}
+
+		for (int iteration = 0; iteration < settings.solverIterations; iteration++) {
+			for (int k = from; k < to; k++) {
+				int ci = contactOrder[k];
+				Contact c = contacts.get(ci);
+				int ra = rows[contactA[ci]], rb = rows[contactB[ci]];
+				float ia = ra >= 0 ? invMass[ra] : 0, ib = rb >= 0 ? invMass[rb] : 0;
+				if (ia + ib == 0) continue;
+
+				float nx = c.getNormalX(), ny = c.getNormalY();
+				float vn = velocity(vx, ra, rb) * nx + velocity(vy, ra, rb) * ny;
+				float old = c.getImpulse();
+				float j = Math.max(old + (targets[ci] - vn) / (ia + ib), 0);
+				c.setImpulse(j);
+				j -= old;
+
+				if (ra >= 0) {
+					vx[ra] -= j * nx * ia;
+					vy[ra] -= j * ny * ia;
+				}
+				if (rb >= 0) {
+					vx[rb] += j * nx * ib;
+					vy[rb] += j * ny * ib;
+				}
+			}
+		}
+
+		for (int k = from; k < to; k++) {
+			int ci = contactOrder[k];
+			Contact c = contacts.get(ci);
+			int ra = rows[contactA[ci]], rb = rows[contactB[ci]];
+			float ia = ra >= 0 ? invMass[ra] : 0, ib = rb >= 0 ? invMass[rb] : 0;
+			if (ia + ib == 0) continue;
+
+			float push = Math.max(c.getDepth() - SLOP, 0) * CORRECTION / (ia + ib);
+			if (ra >= 0) {
+				x[ra] -= push * c.getNormalX() * ia;
+				y[ra] -= push * c.getNormalY() * ia;
+			}
+			if (rb >= 0) {
+				x[rb] += push * c.getNormalX() * ib;
+				y[rb] += push * c.getNormalY() * ib;
+			}
+		}
+
+		rest(island);
+	}
+
+	/**
+	 * Counts the cycles the island has been slow for, putting it to sleep once
+	 * every body has been slow for long enough. An island without contacts is
+	 * a single body touching nothing, which does not rest
+	 */
+	private void rest(int island) {
+		final float limit = settings.sleepSpeed * settings.sleepSpeed;
+		boolean slow = contactStart[island] < contactStart[island + 1];
+		for (int i = bodyStart[island]; i < bodyStart[island + 1] && slow; i++) {
+			int r = rows[bodyOrder[i]];
+			slow = components.vx[r] * components.vx[r] + components.vy[r] * components.vy[r] < limit;
+		}
+
+		for (int i = bodyStart[island]; i < bodyStart[island + 1]; i++) {
+			int r = rows[bodyOrder[i]];
+			components.rest[r] = slow ? components.rest[r] + 1 : 0;
+			if (components.rest[r] >= settings.sleepCycles) {
+				components.vx[r] = components.vy[r] = components.omega[r] = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return the velocity of body b relative to body a along one axis
+	 */
+	private static float velocity(float[] v, int ra, int rb) {
+		return (rb >= 0 ? v[rb] : 0) - (ra >= 0 ? v[ra] : 0);
+	}
+
+	private int find(int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	private void union(int a, int b) {
+		a = find(a);
+		b = find(b);
+		if (a != b) parents[Math.max(a, b)] = Math.min(a, b);
+	}
+
+	/**
+	 * @return the number of islands found on the last cycle
+	 */
+	int islands() {
+		return islands;
+	}
+
+	/**
+	 * Runs the parallel work on a pool owned by the caller, which is not shut
+	 * down by {@link #destroy()}
+	 */
+	void setPool(ForkJoinPool pool) {
+		if (this.pool != null && !sharedPool) this.pool.shutdown();
+		this.pool = pool;
+		this.sharedPool = true;
+	}
+
+	void destroy() {
+		if (pool != null && !sharedPool) pool.shutdown();
+	}
+
+}
@@ -0,0 +1,194 @@
+package game2d.engine;
+
+import java.util.Arrays;
+
+/**
+ * A loose grid of the world bounds of sprites, used to find the sprites
+ * inside the view of the camera without testing every one of them
+ * <p>
+ * Each sprite is kept in the cell holding the centre of its bounds, so a
+ * query only has to widen the view by a single cell. Sprites larger than a
+ * cell are kept aside and tested on every query. Cells are hashed into a table
+ * sized to the number of sprites so the grid is unbounded. Once built the
+ * index is only read, so a single index may be shared by many frames
+ *
+ * @author Gareth Kmet
+ */
+final class SpriteIndex {
+
+	private final double cellSize;
+
+	private double[] minX = new double[64], minY = new double[64], maxX = new double[64], maxY = new double[64];
+	private int size = 0;
+
+	private int[] large = new int[16];
+	private int larges = 0;
+
+	/**
+	 * The sprites sorted by bucket, and the start of each bucket in
+	 * {@link #order}
+	 */
+	private int[] order = new int[64], start = new int[17], bucket = new int[64];
+	private int mask = 15;
+
+	/**
+	 * @param cellSize
+	 *                     the width of a cell in metres
+	 */
+	SpriteIndex(double cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	void clear() {
+		size = 0;
+		larges = 0;
+	}
+
+	/**
+	 * @return the index of the sprite, in the order they were added
+	 */
+	int add(double x0, double y0, double x1, double y1) {
+		if (size == minX.length) {
+			minX = Arrays.copyOf(minX, size * 2);
+			minY = Arrays.copyOf(minY, size * 2);
+			maxX = Arrays.copyOf(maxX, size * 2);
+			maxY = Arrays.copyOf(maxY, size * 2);
+		}
+		minX[size] = x0;
+		minY[size] = y0;
+		maxX[size] = x1;
+		maxY[size] = y1;
+		return size++;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Sorts the added sprites into their cells. Must be called after the last
+	 * {@link #add} and before the first {@link #query}
+	 */
+	void build() {
+		int table = Integer.highestOneBit(Math.max(16, size - 1) << 1);
+		if (start.length < table + 1) start = new int[table + 1];
+		if (bucket.length < size) {
+			bucket = new int[minX.length];
+			order = new int[minX.length];
+		}
+		mask = table - 1;
+		Arrays.fill(start, 0, table + 1, 0);
+		larges = 0;
+
+		for (int i = 0; i < size; i++) {
+			double w = maxX[i] - minX[i], h = maxY[i] - minY[i];
+			// also catches infinite and NaN bounds
+			if (!(w <= cellSize * 2 && h <= cellSize * 2)) {
+				if (larges == large.length) large = Arrays.copyOf(large, larges * 2);
+				large[larges++] = i;
+				bucket[i] = -1;
+				continue;
+			}
+			bucket[i] = hash(cell(minX[i] + w / 2), cell(minY[i] + h / 2));
+			start[bucket[i] + 1]++;
+		}
+		for (int b = 0; b < table; b++) start[b + 1] += start[b];
+		for (int i = 0; i < size; i++) {
+			if (bucket[i] >= 0) order[start[bucket[i]]++] = i;
+		}
+		// the scatter moved each start onto the next bucket
+		for (int b = table; b > 0; b--) start[b] = start[b - 1];
+		start[0] = 0;
+	}
+
+	/**
+	 * Finds every sprite whose bounds overlap a rectangle
+	 *
+	 * @param out
+	 *                receives the indices of the sprites, in ascending order
+	 */
+	void query(double x0, double y0, double x1, double y1, Selection out) {
+		out.size = 0;
+		if (size == 0) return;
+
+		long cx0 = cell(x0) - 1, cx1 = cell(x1) + 1, cy0 = cell(y0) - 1, cy1 = cell(y1) + 1;
+		long cells = (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+		if (cells <= 0 || cells > mask + 1) {
+			for (int i = 0; i < size; i++) {
+				if (overlaps(i, x0, y0, x1, y1)) out.add(i);
+			}
+			return;
+		}
+
+		int buckets = out.cells((int) cells);
+		int[] bs = out.cells;
+		for (long cx = cx0; cx <= cx1; cx++) {
+			for (long cy = cy0; cy <= cy1; cy++) {
+				bs[buckets++] = hash(cx, cy);
+			}
+		}
+		// cells may share a bucket, which must only be visited once
+		Arrays.sort(bs, 0, buckets);
+		for (int c = 0; c < buckets; c++) {
+			int b = bs[c];
+			if (c > 0 && b == bs[c - 1]) continue;
+			for (int k = start[b]; k < start[b + 1]; k++) {
+				int i = order[k];
+				if (overlaps(i, x0, y0, x1, y1)) out.add(i);
+			}
+		}
+		for (int k = 0; k < larges; k++) {
+			int i = large[k];
+			if (overlaps(i, x0, y0, x1, y1)) out.add(i);
+		}
+		Arrays.sort(out.items, 0, out.size);
+	}
+
+	private boolean overlaps(int i, double x0, double y0, double x1, double y1) {
+		return minX[i] <= x1 && maxX[i] >= x0 && minY[i] <= y1 && maxY[i] >= y0;
+	}
+
+	private long cell(double v) {
+		return (long) Math.floor(v / cellSize);
+	}
+
+	private int hash(long cx, long cy) {
+		long h = (cx * 0x9E3779B97F4A7C15L) ^ (cy * 0xC2B2AE3D27D4EB4FL);
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * The result of a {@link SpriteIndex#query}, reused between queries by the
+	 * thread which owns it
+	 *
+	 * @author Gareth Kmet
+	 */
+	static final class Selection {
+
+		int[] items = new int[64];
+		int size = 0;
+		int[] cells = new int[64];
+
+		void add(int i) {
+			if (size == items.length) items = Arrays.copyOf(items, size * 2);
+			items[size++] = i;
+		}
+
+		/**
+		 * Makes room for the buckets of a number of cells in {@link #cells}
+		 */
+		int cells(int n) {
+			if (cells.length < n) cells = new int[Math.max(n, cells.length * 2)];
+			return 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int get(int i) {
+			return items[i];
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package game2d.engine;
+
+import game2d.sprites.GameSprite;
+import game2d.utils.Unit;
+
+/**
+ * Bulk operations over the awake rows of {@link Components}
+ * <p>
+ * Each system is a single linear pass over primitive arrays so that it can be
+ * unrolled and vectorized by the JIT
+ * 
+ * @author Gareth Kmet
+ */
+final class Systems {
+
+	/**
+	 * No initializing
+	 */
+	private Systems() {}
+
+	/**
+	 * Integrates the position and rotation of every awake row by its velocity,
+	 * skipping the rows the physics has put to sleep
+	 * 
+	 * @param c
+	 * @param dt
+	 *                        the length of a cycle
+	 * @param sleepCycles
+	 *                        the cycles at rest after which a row is asleep
+	 */
+	static void move(Components c, @Unit.Measurement(unit = Unit.SECOND) float dt, int sleepCycles) {
+		final int n = c.awake;
+		final float[] x = c.x, y = c.y, vx = c.vx, vy = c.vy, rot = c.rot, omega = c.omega;
+		final int[] rest = c.rest;
+		for (int i = 0; i < n; i++) {
+			float t = rest[i] < sleepCycles ? dt : 0;
+			x[i] += vx[i] * t;
+			y[i] += vy[i] * t;
+			rot[i] += omega[i] * t;
+		}
+	}
+
+	/**
+	 * Sets the transform of the sprite of every awake row to its position and
+	 * rotation
+	 * 
+	 * @param c
+	 */
+	static void transform(Components c) {
+		transform(c, 0, c.awake);
+	}
+
+	/**
+	 * Sets the transform of the sprite of a range of rows to their position and
+	 * rotation, asleep or not
+	 * 
+	 * @param c
+	 * @param from
+	 *                 the first row
+	 * @param to
+	 *                 one past the last row
+	 */
+	static void transform(Components c, int from, int to) {
+		final float[] x = c.x, y = c.y, rot = c.rot;
+		final GameSprite[] sprites = c.sprites;
+		for (int i = from; i < to; i++) {
+			GameSprite s = sprites[i];
+			if (s == null) continue;
+			double cos = Math.cos(rot[i]), sin = Math.sin(rot[i]);
+			s.setTransform(cos, sin, -sin, cos, x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Adds the sprite of every awake visible row to a frame
+	 * 
+	 * @param c
+	 * @param frame
+	 */
+	static void collectVisible(Components c, RenderBuffer.Frame frame) {
+		final int n = c.awake;
+		final int[] state = c.state;
+		final GameSprite[] sprites = c.sprites;
+		for (int i = 0; i < n; i++) {
+			if ((state[i] & Logic.AliveState.VISIBLE) != 0 && sprites[i] != null) frame.add(sprites[i]);
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package game2d.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import game2d.engine.Logic.LogicCycleResults;
+
+/**
+ * How long each phase of a tick takes and how much the world holds, exposed
+ * over JMX
+ * <p>
+ * Registers as <code>game2d:type=TickMetrics,world=N</code> with a
+ * {@link Histogram} for each {@link Phase} as
+ * <code>game2d:type=TickPhase,world=N,phase=...</code>, so several games in
+ * one process do not collide
+ * 
+ * @author Gareth Kmet
+ */
+public final class TickMetrics implements TickMetricsMBean {
+
+	private static final AtomicInteger WORLDS = new AtomicInteger();
+
+	/**
+	 * @author Gareth Kmet
+	 */
+	public enum Phase {
+		/**
+		 * {@link Logic#cycle()}
+		 */
+		LOGIC,
+		/**
+		 * {@link Physics#cycle()}
+		 */
+		PHYSICS,
+		/**
+		 * Acquiring a frame, culling and queueing sprites
+		 */
+		RENDER_PREPARE,
+		/**
+		 * Rasterizing the static layer and the queued sprites
+		 */
+		PAINT,
+		/**
+		 * Time the {@link Timer} spent waiting for the next frame
+		 */
+		SLEEP
+	}
+
+	private final Histogram[] phases = new Histogram[Phase.values().length];
+
+	private volatile long cycles = 0, tick = 0, totalSpawns = 0;
+	private volatile int objects = 0, sleepingObjects = 0, activeSprites = 0, staticSprites = 0, spawns = 0;
+
+	private final int world = WORLDS.incrementAndGet();
+	private boolean registered = false;
+
+	public TickMetrics() {
+		for (int i = 0; i < phases.length; i++) phases[i] = new Histogram();
+	}
+
+	/**
+	 * @param  phase
+	 * 
+	 * @return       the histogram of the time taken by a phase
+	 */
+	public Histogram phase(Phase phase) {
+		return phases[phase.ordinal()];
+	}
+
+	/**
+	 * Each phase must only be recorded by one thread
+	 * 
+	 * @param nanos
+	 *                  the time the phase took
+	 */
+	void record(Phase phase, long nanos) {
+		phases[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Records the counts after a logic cycle
+	 */
+	void tick(LogicCycleResults results) {
+		tick = results.tick();
+		objects = results.objects();
+		sleepingObjects = results.sleeping();
+		activeSprites = results.activeSprites();
+		staticSprites = results.staticSprites();
+		spawns = results.spawns();
+		totalSpawns += results.spawns();
+		cycles++;
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server, doing nothing if
+	 * they already are
+	 */
+	public synchronized void register() {
+		if (registered) return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(this, name());
+			for (Phase p : Phase.values()) server.registerMBean(phase(p), name(p));
+			registered = true;
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public synchronized void unregister() {
+		if (!registered) return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(name());
+			for (Phase p : Phase.values()) server.unregisterMBean(name(p));
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		registered = false;
+	}
+
+	private ObjectName name() throws JMException {
+		return new ObjectName("game2d:type=TickMetrics,world=" + world);
+	}
+
+	private ObjectName name(Phase p) throws JMException {
+		return new ObjectName("game2d:type=TickPhase,world=" + world + ",phase=" + p.name().toLowerCase());
+	}
+
+	@Override
+	public long getCycles() { return cycles; }
+
+	@Override
+	public long getTick() { return tick; }
+
+	@Override
+	public int getObjects() { return objects; }
+
+	@Override
+	public int getSleepingObjects() { return sleepingObjects; }
+
+	@Override
+	public int getActiveSprites() { return activeSprites; }
+
+	@Override
+	public int getStaticSprites() { return staticSprites; }
+
+	@Override
+	public int getSpawns() { return spawns; }
+
+	@Override
+	public long getTotalSpawns() { return totalSpawns; }
+
+	/**
+	 * Clears the histogram of every phase and the total spawns
+	 */
+	@Override
+	public void reset() {
+		for (Histogram h : phases) h.reset();
+		totalSpawns = 0;
+	}
+
+}
@@ -0,0 +1,37 @@
+package game2d.engine;
+
+/**
+ * The JMX view of the counts of a {@link TickMetrics}
+ * 
+ * @author Gareth Kmet
+ */
+public interface TickMetricsMBean {
+
+	public long getCycles();
+
+	/**
+	 * @return the last logic cycle run
+	 */
+	public long getTick();
+
+	/**
+	 * @return the number of awake objects after the last cycle
+	 */
+	public int getObjects();
+
+	public int getSleepingObjects();
+
+	public int getActiveSprites();
+
+	public int getStaticSprites();
+
+	/**
+	 * @return the number of objects spawned on the last cycle
+	 */
+	public int getSpawns();
+
+	public long getTotalSpawns();
+
+	public void reset();
+
+}
@@ -0,0 +1,186 @@
+package game2d.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import game2d.objects.GameObject;
+
+/**
+ * Appends a compact binary log of every cycle, so that a game can be replayed
+ * by {@link Replay}
+ * <p>
+ * The log starts with the settings the game depends on, then holds a record
+ * per cycle of the seed of {@link CommandBuffer#random()}, the number of
+ * objects, the time the cycle took and the class of every object spawned.
+ * Records are encoded into a buffer on the cycling thread and written to the
+ * file by a separate thread once the buffer fills, so the cycle never waits on
+ * the disk
+ * <p>
+ * Numbers are written as unsigned LEB128 varints unless noted:
+ *
+ * <pre>
+ * header: int magic, short version, int timePerCycle, byte parallelLogic,
+ *         int logicChunkSize, long seed, byte broadphase,
+ *         float broadphaseCellSize, int solverIterations, float restitution,
+ *         int sleepCycles, float sleepSpeed
+ * class:  byte 1, id, length, UTF-8 name
+ * tick:   byte 2, tick, long seed, objects, nanos, spawns, class id...
+ * </pre>
+ *
+ * @author Gareth Kmet
+ */
+public final class TickRecorder implements Closeable {
+
+	static final int MAGIC = 0x47324452, VERSION = 2;
+	static final byte CLASS = 1, TICK = 2;
+
+	private static final int BUFFER = 1 << 16, BUFFERS = 4;
+
+	private final FileChannel channel;
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "tick-recorder");
+		t.setDaemon(true);
+		return t;
+	});
+	private final ArrayBlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(BUFFERS);
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+
+	private final HashMap<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+	private int[] spawns = new int[16];
+	private int spawnsSize = 0;
+
+	private volatile IOException failure;
+
+	/**
+	 * @param  path
+	 *                         the file to write, replaced if it exists
+	 * @param  settings
+	 *
+	 * @throws IOException
+	 *                         if the file can not be opened
+	 */
+	public TickRecorder(Path path, Settings settings) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		buffer.putInt(MAGIC);
+		buffer.putShort((short) VERSION);
+		buffer.putInt(settings.timePerCycle);
+		buffer.put((byte) (settings.parallelLogic ? 1 : 0));
+		buffer.putInt(settings.logicChunkSize);
+		buffer.putLong(settings.seed);
+		buffer.put((byte) settings.broadphase.ordinal());
+		buffer.putFloat(settings.broadphaseCellSize);
+		buffer.putInt(settings.solverIterations);
+		buffer.putFloat(settings.restitution);
+		buffer.putInt(settings.sleepCycles);
+		buffer.putFloat(settings.sleepSpeed);
+	}
+
+	/**
+	 * Notes an object spawned during the current cycle
+	 */
+	void spawn(GameObject o) {
+		Integer id = classes.get(o.getClass());
+		if (id == null) {
+			id = classes.size();
+			classes.put(o.getClass(), id);
+			byte[] name = o.getClass().getName().getBytes(StandardCharsets.UTF_8);
+			reserve(1 + 5 + 5 + name.length);
+			buffer.put(CLASS);
+			putVarint(id);
+			putVarint(name.length);
+			buffer.put(name);
+		}
+		if (spawnsSize == spawns.length) spawns = Arrays.copyOf(spawns, spawnsSize * 2);
+		spawns[spawnsSize++] = id;
+	}
+
+	/**
+	 * Ends the record of a cycle
+	 *
+	 * @param tick
+	 * @param seed
+	 *                    the seed the cycle ran with
+	 * @param objects
+	 *                    the number of objects after the cycle
+	 * @param nanos
+	 *                    the time the cycle took
+	 */
+	void tick(long tick, long seed, int objects, long nanos) {
+		reserve(1 + 10 + 8 + 5 + 10 + 5 + spawnsSize * 5);
+		buffer.put(TICK);
+		putVarint(tick);
+		buffer.putLong(seed);
+		putVarint(objects);
+		putVarint(Math.max(0, nanos));
+		putVarint(spawnsSize);
+		for (int i = 0; i < spawnsSize; i++) putVarint(spawns[i]);
+		spawnsSize = 0;
+	}
+
+	private void putVarint(long v) {
+		while ((v & ~0x7FL) != 0) {
+			buffer.put((byte) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+
+	/**
+	 * Hands the buffer to the writer if it can not hold another record
+	 */
+	private void reserve(int bytes) {
+		if (buffer.remaining() >= bytes) return;
+		handOff();
+		if (buffer.remaining() < bytes) buffer = ByteBuffer.allocateDirect(Math.max(BUFFER, bytes));
+	}
+
+	private void handOff() {
+		ByteBuffer full = buffer;
+		full.flip();
+		ByteBuffer next = free.poll();
+		buffer = next != null ? next : ByteBuffer.allocateDirect(BUFFER);
+		writer.execute(() -> write(full));
+	}
+
+	private void write(ByteBuffer full) {
+		try {
+			while (full.hasRemaining()) channel.write(full);
+		} catch (IOException e) {
+			if (failure == null) failure = e;
+		}
+		full.clear();
+		if (full.capacity() == BUFFER) free.offer(full);
+	}
+
+	/**
+	 * Writes what remains of the log and closes the file
+	 *
+	 * @throws IOException
+	 *                         if any write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		handOff();
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) throw failure;
+	}
+
+}
@@ -0,0 +1,217 @@
+package game2d.engine;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import game2d.sprites.ShapeSprite;
+
+/**
+ * Rasterizes the active sprites of a {@link RenderBuffer.Frame} in software on
+ * every core, by splitting an offscreen image into square tiles
+ * <p>
+ * Each tile is drawn by one thread through its own clipped {@link Graphics2D}
+ * and {@link RenderQueue}, and only with the sprites whose bounds overlap the
+ * part of the world under that tile. Tiles never share pixels, so no thread
+ * waits on another. A sprite over several tiles is drawn once into each,
+ * clipped to the tile. Colours and strokes are numbered for every tile before
+ * any is drawn, so that the tiles sort overlapping sprites alike. The finished
+ * image is drawn onto the surface with a single blit
+ *
+ * @author Gareth Kmet
+ */
+final class TileRenderer {
+
+	/**
+	 * The state a thread needs to draw one tile, reused between frames
+	 *
+	 * @author Gareth Kmet
+	 */
+	private static final class Tile {
+		private final RenderQueue queue;
+		private final SpriteIndex.Selection visible = new SpriteIndex.Selection();
+		private final AffineTransform interpolated = new AffineTransform();
+		private final Rectangle2D.Double view = new Rectangle2D.Double();
+		private int x, y, width, height;
+
+		private Tile(HashMap<Object, Integer> states) {
+			this.queue = new RenderQueue(states);
+		}
+	}
+
+	/**
+	 * The pixels each tile looks past its edges for sprites, so that outlines
+	 * and antialiasing which spill over from a neighbouring tile are drawn
+	 */
+	private static final int MARGIN = 8;
+
+	private final Settings settings;
+	private ForkJoinPool pool;
+	private boolean sharedPool = false;
+
+	/**
+	 * The ids of colours and strokes shared by every tile, so that overlapping
+	 * sprites are stacked the same way on both sides of a seam
+	 */
+	private final HashMap<Object, Integer> states = new HashMap<Object, Integer>();
+	private final RenderQueue interner = new RenderQueue(states);
+
+	private BufferedImage image;
+	private Tile[] tiles = new Tile[0];
+	private int count = 0;
+
+	private final AffineTransform device = new AffineTransform();
+	private final AffineTransform inverse = new AffineTransform();
+	private boolean invertible;
+	private RenderBuffer.Frame frame;
+	private double alpha;
+	private QualityGovernor.Quality quality;
+
+	TileRenderer(Settings settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * @param g2
+	 *                   a graphics with the screen (untransformed) transform
+	 * @param camera
+	 *                   the camera fitted to the surface
+	 * @param width
+	 *                   the width of the drawing surface
+	 * @param height
+	 *                   the height of the drawing surface
+	 */
+	void render(Graphics2D g2, RenderBuffer.Frame frame, double alpha, Camera camera, int width, int height,
+			QualityGovernor.Quality quality) {
+		AffineTransform screen = g2.getTransform();
+		double sx = screen.getScaleX(), sy = screen.getScaleY();
+		int lw = (int) Math.ceil(width * sx), lh = (int) Math.ceil(height * sy);
+		if (lw <= 0 || lh <= 0) return;
+
+		if (image == null || image.getWidth() != lw || image.getHeight() != lh) {
+			if (image != null) image.flush();
+			image = new BufferedImage(lw, lh, BufferedImage.TYPE_INT_ARGB_PRE);
+			layout(lw, lh);
+		}
+
+		device.setToScale(sx, sy);
+		device.concatenate(camera.transform());
+		if (camera.inverse() != null) {
+			inverse.setTransform(camera.inverse());
+			inverse.scale(1 / sx, 1 / sy);
+		}
+		invertible = camera.inverse() != null;
+		interner.trim();
+		for (int i = 0; i < frame.size(); i++) {
+			if (frame.sprite(i) instanceof ShapeSprite shape) interner.intern(shape);
+		}
+		this.frame = frame;
+		this.alpha = alpha;
+		this.quality = quality;
+
+		if (pool == null) pool = new ForkJoinPool();
+		pool.invoke(new TileTask(0, count));
+		this.frame = null;
+
+		g2.drawImage(image, 0, 0, width, height, null);
+	}
+
+	/**
+	 * Splits the image into tiles of {@link Settings#renderTileSize}
+	 */
+	private void layout(int width, int height) {
+		int size = Math.max(16, settings.renderTileSize);
+		int columns = (width + size - 1) / size, rows = (height + size - 1) / size;
+		count = columns * rows;
+		if (tiles.length < count) {
+			int length = tiles.length;
+			tiles = Arrays.copyOf(tiles, count);
+			for (int i = length; i < count; i++) tiles[i] = new Tile(states);
+		}
+		for (int r = 0, i = 0; r < rows; r++) {
+			for (int c = 0; c < columns; c++, i++) {
+				Tile t = tiles[i];
+				t.x = c * size;
+				t.y = r * size;
+				t.width = Math.min(size, width - t.x);
+				t.height = Math.min(size, height - t.y);
+			}
+		}
+	}
+
+	private void draw(Tile t) {
+		Graphics2D g2 = image.createGraphics();
+		try {
+			g2.clipRect(t.x, t.y, t.width, t.height);
+			g2.setComposite(AlphaComposite.Clear);
+			g2.fillRect(t.x, t.y, t.width, t.height);
+			g2.setComposite(AlphaComposite.SrcOver);
+			g2.setRenderingHints(quality.hints());
+			g2.setTransform(device);
+
+			if (invertible) {
+				t.view.setRect(t.x - MARGIN, t.y - MARGIN, t.width + 2 * MARGIN, t.height + 2 * MARGIN);
+				Rectangle2D v = inverse.createTransformedShape(t.view).getBounds2D();
+				frame.index().query(v.getMinX(), v.getMinY(), v.getMaxX(), v.getMaxY(), t.visible);
+				for (int k = 0; k < t.visible.size(); k++) add(t, t.visible.get(k));
+			} else {
+				for (int i = 0; i < frame.size(); i++) add(t, i);
+			}
+			t.queue.flush(g2, quality.outlines());
+		} finally {
+			g2.dispose();
+		}
+	}
+
+	private void add(Tile t, int i) {
+		if (frame.sprite(i) instanceof ShapeSprite shape) {
+			t.queue.add(shape, frame.transformation(i, alpha, t.interpolated), frame.shape(i));
+		}
+	}
+
+	/**
+	 * Draws a range of tiles, splitting it until it is a single tile
+	 */
+	private final class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from, to;
+
+		TileTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1) {
+				for (int i = from; i < to; i++) draw(tiles[i]);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TileTask(from, mid), new TileTask(mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Runs the parallel work on a pool owned by the caller, which is not shut
+	 * down by {@link #destroy()}
+	 */
+	void setPool(ForkJoinPool pool) {
+		if (this.pool != null && !sharedPool) this.pool.shutdown();
+		this.pool = pool;
+		this.sharedPool = true;
+	}
+
+	void destroy() {
+		if (pool != null && !sharedPool) pool.shutdown();
+	}
+
+}
@@ -1,41 +1,148 @@
 package game2d.engine;
 
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.TimeUnit;
+
 import javax.swing.JOptionPane;
 
 public class Timer implements Runnable{
 	
-	private final Game game;
-	private int delay;
-	private boolean run = true;
+	private final Simulation game;
+	private final Settings settings;
+	private final TickMetrics metrics;
+	private volatile boolean run = true;
+	private final Events.Frame event = new Events.Frame();
 	
-	public Timer(Game game, int delay) {
+	/**
+	 * @param metrics receives the time spent sleeping between frames
+	 */
+	public Timer(Simulation game, Settings settings, TickMetrics metrics) {
 		this.game=game;
-		this.delay=delay;
+		this.settings=settings;
+		this.metrics=metrics;
 	}
 
 	@Override
 	public void run() {
+		if(settings.fixedTimestep) {
+			runFixed();
+		}else {
+			runVariable();
+		}
+	}
+	
+	/**
+	 * Legacy loop, one logic cycle and one render per iteration paced with a
+	 * millisecond sleep
+	 */
+	private void runVariable() {
 		long beforeTime, timeDiff, sleep;
 		
 		beforeTime = System.currentTimeMillis();
 		
 		while(run) {
-			game.cycle();
+			boolean recording = event.isEnabled();
+			if(recording)event.begin();
+			if(!game.cycle())run=false;
+			game.render(1);
+			if(recording) {
+				event.end();
+				if(event.shouldCommit()) {
+					event.cycles = 1;
+					event.alpha = 1;
+					event.dropped = false;
+					event.tick = metrics.getTick();
+					event.awake = metrics.getObjects();
+					event.sleeping = metrics.getSleepingObjects();
+					event.commit();
+				}
+			}
 			
 			timeDiff= System.currentTimeMillis()-beforeTime;
-			sleep=delay-timeDiff;
+			sleep=settings.timePerCycle-timeDiff;
 			
 			if(sleep<0)sleep=2;
 			
-			try {
-				Thread.sleep(sleep);
-			} catch (InterruptedException e) {
-				JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-			}
+			sleep(TimeUnit.MILLISECONDS.toNanos(sleep));
 			
 			beforeTime = System.currentTimeMillis();
 		}
+	}
+	
+	/**
+	 * Fixed timestep loop
+	 * <p>
+	 * Logic is stepped in exact increments of {@link Settings#timePerCycle},
+	 * running several cycles in one frame when behind (at most
+	 * {@link Settings#maxCyclesPerFrame}, after which the backlog is dropped).
+	 * Rendering happens once per {@link Settings#timePerFrame} and is given the
+	 * fraction of a cycle that has elapsed since the last logic step so that it
+	 * can interpolate between the last two cycles.
+	 */
+	private void runFixed() {
+		final long step = TimeUnit.MILLISECONDS.toNanos(settings.timePerCycle);
+		final long frame = TimeUnit.MILLISECONDS.toNanos(settings.timePerFrame);
+		
+		long previous = System.nanoTime();
+		long accumulator = 0;
 		
+		while(run) {
+			boolean recording = event.isEnabled();
+			if(recording)event.begin();
+			long frameStart = System.nanoTime();
+			accumulator += frameStart-previous;
+			previous = frameStart;
+			
+			int cycles = 0;
+			while(accumulator>=step && cycles<settings.maxCyclesPerFrame && run) {
+				if(!game.cycle())run=false;
+				accumulator-=step;
+				cycles++;
+			}
+			
+			// too far behind to catch up, drop the backlog instead of spiralling
+			boolean dropped = accumulator>=step;
+			if(dropped)accumulator%=step;
+			
+			double alpha = accumulator/(double)step;
+			game.render(alpha);
+			
+			if(recording) {
+				event.end();
+				if(event.shouldCommit()) {
+					event.cycles = cycles;
+					event.alpha = alpha;
+					event.dropped = dropped;
+					event.tick = metrics.getTick();
+					event.awake = metrics.getObjects();
+					event.sleeping = metrics.getSleepingObjects();
+					event.commit();
+				}
+			}
+			
+			long sleep = frame-(System.nanoTime()-frameStart);
+			if(sleep>0) {
+				sleep(sleep);
+			}else {
+				long start = System.nanoTime();
+				Thread.yield();
+				metrics.record(TickMetrics.Phase.SLEEP, System.nanoTime()-start);
+			}
+		}
+	}
+	
+	private void sleep(long nanos) {
+		long start = System.nanoTime();
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			if(GraphicsEnvironment.isHeadless()) {
+				e.printStackTrace();
+			}else {
+				JOptionPane.showMessageDialog(null, e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		metrics.record(TickMetrics.Phase.SLEEP, System.nanoTime()-start);
 	}
 	
 	public void destroy() {
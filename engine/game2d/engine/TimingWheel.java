@@ -0,0 +1,79 @@
+package game2d.engine;
+
+import java.util.Arrays;
+
+/**
+ * Hashed timing wheel of handles waiting for a cycle
+ * <p>
+ * Scheduling is constant time and advancing one cycle only visits the handles
+ * in a single slot of the wheel. Handles whose deadline is more than one turn of
+ * the wheel away stay in their slot until the turn they are due.
+ * 
+ * @author Gareth Kmet
+ */
+final class TimingWheel {
+
+	/**
+	 * Receives the handles which are due
+	 */
+	@FunctionalInterface
+	interface Expiry {
+		void expire(int handle, long deadline);
+	}
+
+	private final int mask;
+	private final int[][] handles;
+	private final long[][] deadlines;
+	private final int[] sizes;
+
+	/**
+	 * @param slots
+	 *                  the number of slots, rounded up to a power of two
+	 */
+	TimingWheel(int slots) {
+		int n = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+		this.mask = n - 1;
+		this.handles = new int[n][4];
+		this.deadlines = new long[n][4];
+		this.sizes = new int[n];
+	}
+
+	/**
+	 * @param handle
+	 * @param deadline
+	 *                     the cycle the handle is due on
+	 */
+	void schedule(int handle, long deadline) {
+		int slot = (int) (deadline & mask);
+		int size = sizes[slot];
+		if (size == handles[slot].length) {
+			handles[slot] = Arrays.copyOf(handles[slot], size * 2);
+			deadlines[slot] = Arrays.copyOf(deadlines[slot], size * 2);
+		}
+		handles[slot][size] = handle;
+		deadlines[slot][size] = deadline;
+		sizes[slot] = size + 1;
+	}
+
+	/**
+	 * Expires every handle in the slot of a cycle that is due on or before it
+	 * 
+	 * @param cycle
+	 * @param expiry
+	 */
+	void advance(long cycle, Expiry expiry) {
+		int slot = (int) (cycle & mask);
+		int[] h = handles[slot];
+		long[] d = deadlines[slot];
+		for (int i = sizes[slot] - 1; i >= 0; i--) {
+			if (d[i] > cycle) continue;
+			int handle = h[i];
+			long deadline = d[i];
+			int last = --sizes[slot];
+			h[i] = h[last];
+			d[i] = d[last];
+			expiry.expire(handle, deadline);
+		}
+	}
+
+}
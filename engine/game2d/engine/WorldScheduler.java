@@ -0,0 +1,286 @@
+package game2d.engine;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs many {@link HeadlessGame}s in real time on a shared pool of threads,
+ * instead of a {@link Timer} thread per game
+ * <p>
+ * Every world has a deadline, the time its next cycle is due. A single thread
+ * waits for the earliest deadline and hands every world which is due to the
+ * pool, so the world furthest behind is always run first. A world is only ever
+ * run by one thread at a time, and is given back to the queue once it has run.
+ * <p>
+ * Each time it is run, a world catches up on the cycles it is due, but for at
+ * most {@link Settings#maxCyclesPerFrame} cycles and
+ * {@link Settings#worldTickBudget}, so that one slow world can not hold a
+ * thread of the pool while others wait. A world still behind after its budget
+ * keeps its old deadline and so is run again as soon as a thread is free,
+ * unless it is more than {@link Settings#maxCyclesPerFrame} cycles behind, in
+ * which case the backlog is dropped as the {@link Timer} does
+ * <p>
+ * The parallel logic, solver and tiles of every world run on the pool of the
+ * scheduler, rather than each world starting pools of its own. The
+ * {@link TickMetrics} of a world are unregistered from JMX when it is added, so
+ * that many worlds do not register a set of beans each; they can still be
+ * read from {@link World#getGame()}, or registered again for a single world
+ *
+ * @author Gareth Kmet
+ */
+public final class WorldScheduler implements AutoCloseable {
+
+	/**
+	 * A game run by the scheduler
+	 *
+	 * @author Gareth Kmet
+	 */
+	public static final class World {
+
+		private final HeadlessGame game;
+		private final long step, budget;
+		private final int maxCycles;
+
+		/**
+		 * The time the next cycle is due, in {@link System#nanoTime()}
+		 */
+		private long deadline;
+		private volatile boolean removed = false, ended = false;
+		private boolean retired = false;
+		private volatile long dropped = 0, overBudget = 0;
+
+		private World(HeadlessGame game, long now) {
+			Settings settings = game.settings();
+			this.game = game;
+			this.step = TimeUnit.MILLISECONDS.toNanos(settings.timePerCycle);
+			this.budget = TimeUnit.MILLISECONDS.toNanos(settings.worldTickBudget);
+			this.maxCycles = settings.maxCyclesPerFrame;
+			this.deadline = now + step;
+		}
+
+		/**
+		 * Runs the cycles which are due, within the budget of this world
+		 */
+		private void run() {
+			long start = System.nanoTime();
+			int cycles = 0;
+			while (deadline <= System.nanoTime() && cycles < maxCycles && !removed) {
+				if (!game.cycle()) {
+					ended = true;
+					return;
+				}
+				deadline += step;
+				cycles++;
+				if (System.nanoTime() - start > budget) {
+					overBudget++;
+					break;
+				}
+			}
+
+			long now = System.nanoTime();
+			if (now - deadline >= step * maxCycles) {
+				// too far behind to catch up, drop the backlog instead of spiralling
+				long behind = (now - deadline) / step;
+				deadline += behind * step;
+				dropped += behind;
+			}
+			game.render(Math.max(0, Math.min(1, 1 - (deadline - now) / (double) step)));
+		}
+
+		public HeadlessGame getGame() {
+			return game;
+		}
+
+		/**
+		 * @return if the game has ended, after which it is no longer run
+		 */
+		public boolean isEnded() {
+			return ended;
+		}
+
+		/**
+		 * @return the number of cycles skipped because the world fell too far
+		 *         behind
+		 */
+		public long getDropped() {
+			return dropped;
+		}
+
+		/**
+		 * @return the number of times the world used its whole budget
+		 */
+		public long getOverBudget() {
+			return overBudget;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final PriorityQueue<World> queue = new PriorityQueue<World>(
+			(a, b) -> Long.compare(a.deadline - b.deadline, 0));
+	private volatile int worlds = 0;
+
+	private final Histogram lateness = new Histogram();
+	private final Thread dispatcher;
+	private volatile boolean run = true;
+
+	/**
+	 * A scheduler with a pool of a thread per processor
+	 */
+	public WorldScheduler() {
+		this(new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), true);
+	}
+
+	/**
+	 * @param pool
+	 *                 the pool worlds are run on, which is not shut down when the
+	 *                 scheduler is closed
+	 */
+	public WorldScheduler(ForkJoinPool pool) {
+		this(pool, false);
+	}
+
+	private WorldScheduler(ForkJoinPool pool, boolean ownsPool) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.dispatcher = new Thread(this::dispatch, "world-scheduler");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Starts running a game, its first cycle due one cycle from now. The game
+	 * must not also be started or stepped by its owner
+	 */
+	public World add(HeadlessGame game) {
+		game.setPool(pool);
+		game.getMetrics().unregister();
+		World w = new World(game, System.nanoTime());
+		lock.lock();
+		try {
+			worlds++;
+			queue.add(w);
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		return w;
+	}
+
+	/**
+	 * Stops running a world. A cycle already running is finished. The game is
+	 * not destroyed
+	 */
+	public void remove(World w) {
+		w.removed = true;
+		lock.lock();
+		try {
+			queue.remove(w);
+			retire(w);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of worlds being run
+	 */
+	public int size() {
+		return worlds;
+	}
+
+	/**
+	 * @return how late worlds were handed to the pool after their deadline
+	 */
+	public Histogram getLateness() {
+		return lateness;
+	}
+
+	private void dispatch() {
+		lock.lock();
+		try {
+			while (run) {
+				World w = queue.peek();
+				long now = System.nanoTime();
+				if (w == null) {
+					changed.await();
+				} else if (w.deadline > now) {
+					changed.awaitNanos(w.deadline - now);
+				} else {
+					queue.poll();
+					lateness.record(now - w.deadline);
+					pool.execute(() -> runWorld(w));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void runWorld(World w) {
+		try {
+			w.run();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			w.ended = true;
+		}
+		lock.lock();
+		try {
+			if (w.ended || w.removed || !run) {
+				retire(w);
+				return;
+			}
+			queue.add(w);
+			if (queue.peek() == w) changed.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops counting a world, once. Must hold the lock
+	 */
+	private void retire(World w) {
+		if (w.retired) return;
+		w.retired = true;
+		worlds--;
+	}
+
+	/**
+	 * Stops running every world and waits for the cycles already running. The
+	 * games are not destroyed
+	 */
+	@Override
+	public void close() {
+		run = false;
+		lock.lock();
+		try {
+			for (World w : queue) retire(w);
+			queue.clear();
+			changed.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			dispatcher.join();
+			if (ownsPool) {
+				pool.shutdown();
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} else {
+				pool.awaitQuiescence(1, TimeUnit.MINUTES);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,457 @@
+package game2d.engine;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import game2d.objects.GameObject;
+import game2d.physics.PhysicsRecords;
+import game2d.sprites.GameSprite;
+import game2d.sprites.ShapeSprite;
+
+/**
+ * A versioned binary image of the {@link Logic}, written and read through
+ * memory mapped regions of a file
+ * <p>
+ * {@link #capture} copies the state of the logic into primitive arrays, which
+ * is a handful of bulk copies even for large worlds, so it may be done between
+ * two cycles. The static sprites are encoded whole at the same time, as a
+ * sprite may be changed by the game once the cycles carry on. The returned
+ * {@link Writer} then writes those copies a few megabytes per
+ * {@link Writer#step(int)}, so the file can be written over several cycles
+ * while the game carries on. {@link #load} reads the arrays back in bulk.
+ * <p>
+ * Saved are the cycle and seed, the settings of the camera and the timestep,
+ * every handle, the rows of the {@link Components}, the class, handle and
+ * sleep of every object and the static {@link ShapeSprite}s. Objects are
+ * rebuilt with their no argument constructor and awoken again, after which the
+ * rows of entity objects are overwritten with their saved rows, so only the
+ * state held in the components survives a save. Strokes other than
+ * {@link BasicStroke} are saved as a default stroke. Static sprites which are
+ * not {@link ShapeSprite}s draw nothing and are not saved.
+ * <p>
+ * All numbers are little endian. The file holds a header of counts followed by
+ * the arrays in this order:
+ *
+ * <pre>
+ * int magic, short version, short 0, long cycle, long seed
+ * int timePerCycle, int timePerFrame, long settings seed, int metreDefinition,
+ * float screenXOffset, float screenYOffset, double rot, int anchorX, int anchorY
+ * int handle capacity, int released handles, int rows, int awake rows,
+ * int objects, int classes, int statics
+ * int[] generations, int[] released
+ * int[] entities, float[] x, y, vx, vy, rot, omega, invMass, int[] state, rest
+ * int[] object class, int[] object handle, long[] object wake, byte[] asleep
+ * classes: short length, UTF-8 name
+ * statics: int layer, int fill, int outline, fill stroke, outline stroke,
+ *          double[6] transform, byte winding rule, int segments, int coords,
+ *          byte[] segment types, float[] coords
+ * stroke:  float width, byte cap, byte join, float miter limit
+ * </pre>
+ *
+ * @author Gareth Kmet
+ */
+public final class WorldSnapshot {
+
+	static final int MAGIC = 0x47324453, VERSION = 1;
+
+	private static final int HEADER = 4 + 2 + 2 + 8 + 8 + 4 + 4 + 8 + 4 + 4 + 4 + 8 + 4 + 4 + 4 * 7;
+
+	private WorldSnapshot() {}
+
+	/**
+	 * Copies the state of the logic. Must be called on the thread which cycles
+	 * the logic, between two cycles
+	 *
+	 * @param  path
+	 *                         the file to write, replaced if it exists
+	 *
+	 * @throws IOException
+	 *                         if the file can not be opened
+	 */
+	static Writer capture(Logic logic, Settings settings, Path path) throws IOException {
+		return new Writer(logic, settings, path);
+	}
+
+	/**
+	 * Writes a captured snapshot over one or more calls to {@link #step(int)}
+	 *
+	 * @author Gareth Kmet
+	 */
+	public static final class Writer implements Closeable {
+
+		private final Path path;
+		private final FileChannel channel;
+		private final ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+
+		/**
+		 * The arrays still to be written, in order
+		 */
+		private final ArrayList<Object> arrays = new ArrayList<Object>();
+		private int array = 0, offset = 0;
+
+		private final byte[][] classes;
+		private final byte[][] statics;
+		private int written = 0;
+
+		private long position = 0;
+
+		private Writer(Logic logic, Settings settings, Path path) throws IOException {
+			Handles handles = logic.handles();
+			int capacity = handles.capacity(), released = handles.released();
+			int[] handleState = new int[capacity + released];
+			handles.save(handleState);
+
+			Components c = logic.components;
+			int rows = c.size;
+
+			int objects = logic.logicObjects.size() + logic.sleepingObjects.size();
+			int[] classIds = new int[objects], ids = new int[objects];
+			long[] wakes = new long[objects];
+			byte[] asleep = new byte[objects];
+			HashMap<Class<?>, Integer> classIndex = new HashMap<Class<?>, Integer>();
+			ArrayList<byte[]> names = new ArrayList<byte[]>();
+			for (int i = 0; i < objects; i++) {
+				boolean sleeping = i >= logic.logicObjects.size();
+				GameObject o = sleeping ? logic.sleepingObjects.get(i - logic.logicObjects.size())
+						: logic.logicObjects.get(i);
+				Integer id = classIndex.get(o.getClass());
+				if (id == null) {
+					id = names.size();
+					classIndex.put(o.getClass(), id);
+					names.add(o.getClass().getName().getBytes(StandardCharsets.UTF_8));
+				}
+				classIds[i] = id;
+				ids[i] = o.identify();
+				asleep[i] = (byte) (sleeping ? 1 : 0);
+				wakes[i] = sleeping ? logic.wakeCycle(o.identify()) : 0;
+			}
+			this.classes = names.toArray(new byte[0][]);
+			List<GameSprite> sprites = logic.staticSprites();
+			ArrayList<byte[]> encoded = new ArrayList<byte[]>(sprites.size());
+			for (GameSprite s : sprites) { if (s instanceof ShapeSprite shape) encoded.add(encode(shape)); }
+			this.statics = encoded.toArray(new byte[0][]);
+
+			header.putInt(MAGIC).putShort((short) VERSION).putShort((short) 0);
+			header.putLong(logic.cycles()).putLong(logic.seed());
+			header.putInt(settings.timePerCycle).putInt(settings.timePerFrame).putLong(settings.seed);
+			header.putInt(settings.metreDefinition).putFloat(settings.screenXOffset).putFloat(settings.screenYOffset);
+			header.putDouble(settings.screenRot.rot()).putInt(settings.screenRot.anchorX())
+					.putInt(settings.screenRot.anchorY());
+			header.putInt(capacity).putInt(released).putInt(rows).putInt(c.awake);
+			header.putInt(objects).putInt(classes.length).putInt(statics.length);
+			header.flip();
+
+			arrays.add(handleState);
+			arrays.add(Arrays.copyOf(c.entities, rows));
+			for (float[] a : new float[][] { c.x, c.y, c.vx, c.vy, c.rot, c.omega, c.invMass }) {
+				arrays.add(Arrays.copyOf(a, rows));
+			}
+			arrays.add(Arrays.copyOf(c.state, rows));
+			arrays.add(Arrays.copyOf(c.rest, rows));
+			arrays.add(classIds);
+			arrays.add(ids);
+			arrays.add(wakes);
+			arrays.add(asleep);
+
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		/**
+		 * Writes up to about a number of bytes of the snapshot
+		 *
+		 * @param  budget
+		 *                         the number of bytes to write in this call
+		 *
+		 * @return             true once the whole snapshot has been written
+		 *
+		 * @throws IOException
+		 */
+		public boolean step(int budget) throws IOException {
+			if (header.hasRemaining()) {
+				budget -= header.remaining();
+				while (header.hasRemaining()) position += channel.write(header, position);
+			}
+			while (budget > 0 && array < arrays.size()) {
+				budget -= writeArray(arrays.get(array), budget);
+			}
+			while (budget > 0 && array == arrays.size() && written < classes.length) {
+				byte[] name = classes[written++];
+				MappedByteBuffer out = map(2 + name.length);
+				out.putShort((short) name.length).put(name);
+				budget -= 2 + name.length;
+			}
+			while (budget > 0 && written >= classes.length && written - classes.length < statics.length) {
+				byte[] sprite = statics[written++ - classes.length];
+				map(sprite.length).put(sprite);
+				budget -= sprite.length;
+			}
+			return array == arrays.size() && written == classes.length + statics.length;
+		}
+
+		/**
+		 * @return the number of bytes written
+		 */
+		private int writeArray(Object a, int budget) throws IOException {
+			int length = Array.getLength(a);
+			int width = a instanceof long[] ? 8 : a instanceof byte[] ? 1 : 4;
+			int n = Math.min(length - offset, Math.max(1, budget / width));
+			if (n > 0) {
+				MappedByteBuffer out = map((long) n * width);
+				if (a instanceof int[] i) out.asIntBuffer().put(i, offset, n);
+				else if (a instanceof float[] f) out.asFloatBuffer().put(f, offset, n);
+				else if (a instanceof long[] l) out.asLongBuffer().put(l, offset, n);
+				else out.put((byte[]) a, offset, n);
+			}
+			offset += n;
+			if (offset == length) {
+				array++;
+				offset = 0;
+			}
+			return Math.max(1, n * width);
+		}
+
+		/**
+		 * @return the bytes of a static sprite as it is now
+		 */
+		private static byte[] encode(ShapeSprite s) {
+			int segments = 0, coords = 0;
+			float[] c = new float[6];
+			byte[] types = new byte[16];
+			float[] points = new float[32];
+			PathIterator i = s.getShape().getPathIterator(null);
+			for (; !i.isDone(); i.next()) {
+				int type = i.currentSegment(c);
+				int n = switch (type) {
+					case PathIterator.SEG_MOVETO, PathIterator.SEG_LINETO -> 2;
+					case PathIterator.SEG_QUADTO -> 4;
+					case PathIterator.SEG_CUBICTO -> 6;
+					default -> 0;
+				};
+				if (segments == types.length) types = Arrays.copyOf(types, segments * 2);
+				if (coords + n > points.length) points = Arrays.copyOf(points, Math.max(coords + n, points.length * 2));
+				types[segments++] = (byte) type;
+				System.arraycopy(c, 0, points, coords, n);
+				coords += n;
+			}
+
+			int size = 4 * 3 + 10 * 2 + 8 * 6 + 1 + 4 + 4 + segments + coords * 4;
+			ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(s.getLayer()).putInt(s.getFcolor().getRGB()).putInt(s.getoColor().getRGB());
+			putStroke(out, s.getFstroke());
+			putStroke(out, s.getOstroke());
+			double[] m = new double[6];
+			s.transformation().getMatrix(m);
+			for (double d : m) out.putDouble(d);
+			out.put((byte) i.getWindingRule()).putInt(segments).putInt(coords);
+			out.put(types, 0, segments);
+			for (int k = 0; k < coords; k++) out.putFloat(points[k]);
+			return out.array();
+		}
+
+		private static void putStroke(ByteBuffer out, Stroke stroke) {
+			BasicStroke b = stroke instanceof BasicStroke basic ? basic : new BasicStroke();
+			out.putFloat(b.getLineWidth()).put((byte) b.getEndCap()).put((byte) b.getLineJoin())
+					.putFloat(b.getMiterLimit());
+		}
+
+		private MappedByteBuffer map(long bytes) throws IOException {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			position += bytes;
+			return out;
+		}
+
+		/**
+		 * Writes whatever remains of the snapshot and closes the file
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				while (!step(Integer.MAX_VALUE));
+			} finally {
+				channel.close();
+			}
+		}
+
+		/**
+		 * Closes the file and deletes what was written of it, after a failed
+		 * write
+		 */
+		public void abort() {
+			try {
+				channel.close();
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+	}
+
+	/**
+	 * Restores a snapshot into a logic which has not yet been cycled or had any
+	 * object added, and into its settings
+	 *
+	 * @throws IOException
+	 *                         if the file can not be read, is not a snapshot or
+	 *                         names a class which can not be built
+	 */
+	static void load(Path path, Logic logic, Settings settings) throws IOException {
+		if (logic.cycles() != 0 || logic.logicObjects.size() != 0 || logic.sleepingObjects.size() != 0) {
+			throw new IllegalStateException("Snapshots can only be loaded into a new logic");
+		}
+		ByteBuffer in;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		if (in.remaining() < HEADER || in.getInt() != MAGIC) throw new IOException("Not a world snapshot");
+		int version = in.getShort();
+		if (version != VERSION) throw new IOException("Unsupported world snapshot version " + version);
+		in.getShort();
+
+		long cycles = in.getLong(), seed = in.getLong();
+		settings.timePerCycle = in.getInt();
+		settings.timePerFrame = in.getInt();
+		settings.seed = in.getLong();
+		settings.metreDefinition = in.getInt();
+		settings.screenXOffset = in.getFloat();
+		settings.screenYOffset = in.getFloat();
+		settings.screenRot = new PhysicsRecords.Rotation(in.getDouble(), in.getInt(), in.getInt());
+
+		int capacity = in.getInt(), released = in.getInt(), rows = in.getInt();
+		in.getInt(); // the awake rows are rebuilt from the sleep of each object
+		int objects = in.getInt(), classCount = in.getInt(), statics = in.getInt();
+
+		int[] handleState = ints(in, capacity + released);
+		int[] entities = ints(in, rows);
+		float[][] values = new float[7][];
+		for (int k = 0; k < values.length; k++) values[k] = floats(in, rows);
+		int[] state = ints(in, rows), rest = ints(in, rows);
+		int[] classIds = ints(in, objects), ids = ints(in, objects);
+		long[] wakes = new long[objects];
+		in.asLongBuffer().get(wakes);
+		in.position(in.position() + objects * 8);
+		byte[] asleep = new byte[objects];
+		in.get(asleep);
+
+		ArrayList<Constructor<? extends GameObject>> constructors = new ArrayList<Constructor<? extends GameObject>>();
+		for (int k = 0; k < classCount; k++) {
+			byte[] name = new byte[in.getShort()];
+			in.get(name);
+			String className = new String(name, StandardCharsets.UTF_8);
+			try {
+				Constructor<? extends GameObject> c = Class.forName(className).asSubclass(GameObject.class)
+						.getDeclaredConstructor();
+				c.setAccessible(true);
+				constructors.add(c);
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IOException("Can not build " + className, e);
+			}
+		}
+
+		logic.restore(cycles, seed);
+		logic.handles().restore(handleState, capacity, released);
+		for (int k = 0; k < objects; k++) {
+			GameObject o;
+			try {
+				o = constructors.get(classIds[k]).newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new IOException("Can not build " + constructors.get(classIds[k]).getDeclaringClass(), e);
+			}
+			o.identify(ids[k]);
+			o.awaken(settings);
+			logic.restore(o, asleep[k] != 0, wakes[k]);
+		}
+
+		Components c = logic.components;
+		for (int r = 0; r < rows; r++) {
+			int row = c.row(entities[r]);
+			if (row < 0) continue;
+			c.x[row] = values[0][r];
+			c.y[row] = values[1][r];
+			c.vx[row] = values[2][r];
+			c.vy[row] = values[3][r];
+			c.rot[row] = values[4][r];
+			c.omega[row] = values[5][r];
+			c.invMass[row] = values[6][r];
+			c.state[row] = state[r];
+			c.rest[row] = rest[r];
+		}
+		// sleeping rows are not placed by the cycle, so place every sprite now
+		Systems.transform(c, 0, c.size);
+
+		for (int k = 0; k < statics; k++) logic.addStaticSprite(readSprite(in));
+	}
+
+	private static int[] ints(ByteBuffer in, int n) {
+		int[] a = new int[n];
+		in.asIntBuffer().get(a);
+		in.position(in.position() + n * 4);
+		return a;
+	}
+
+	private static float[] floats(ByteBuffer in, int n) {
+		float[] a = new float[n];
+		in.asFloatBuffer().get(a);
+		in.position(in.position() + n * 4);
+		return a;
+	}
+
+	private static ShapeSprite readSprite(ByteBuffer in) {
+		int layer = in.getInt();
+		Color fill = new Color(in.getInt(), true), outline = new Color(in.getInt(), true);
+		Stroke fstroke = readStroke(in), ostroke = readStroke(in);
+		double[] m = new double[6];
+		for (int k = 0; k < 6; k++) m[k] = in.getDouble();
+		int rule = in.get(), segments = in.getInt(), coords = in.getInt();
+		byte[] types = new byte[segments];
+		in.get(types);
+		float[] points = floats(in, coords);
+
+		Path2D.Float shape = new Path2D.Float(rule, segments);
+		for (int k = 0, p = 0; k < segments; k++) {
+			switch (types[k]) {
+				case PathIterator.SEG_MOVETO -> shape.moveTo(points[p++], points[p++]);
+				case PathIterator.SEG_LINETO -> shape.lineTo(points[p++], points[p++]);
+				case PathIterator.SEG_QUADTO -> shape.quadTo(points[p++], points[p++], points[p++], points[p++]);
+				case PathIterator.SEG_CUBICTO -> shape.curveTo(points[p++], points[p++], points[p++], points[p++],
+						points[p++], points[p++]);
+				default -> shape.closePath();
+			}
+		}
+		ShapeSprite s = new ShapeSprite(fill, outline, fstroke, ostroke, shape);
+		s.setTransform(new AffineTransform(m));
+		s.setLayer(layer);
+		return s;
+	}
+
+	private static Stroke readStroke(ByteBuffer in) {
+		float width = in.getFloat();
+		int cap = in.get(), join = in.get();
+		float miter = in.getFloat();
+		return new BasicStroke(width, cap, join, Math.max(1, miter));
+	}
+
+}
@@ -0,0 +1,198 @@
+package game2d.objects;
+
+import game2d.engine.Components;
+import game2d.engine.Logic;
+import game2d.sprites.GameSprite;
+
+/**
+ * A {@link GameObject} whose position, velocity, rotation, alive state and
+ * sprite are stored in the {@link Components} of the logic
+ * <p>
+ * The logic moves the object by its velocity, sets the transform of its sprite
+ * and collects it for drawing in bulk, so subclasses only need to steer it
+ * 
+ * @author Gareth Kmet
+ */
+public class EntityObject extends GameObject {
+
+	private Components components;
+
+	/**
+	 * The state of this object while it has no row, before it is attached and
+	 * after it has died, written into its row when it is attached
+	 */
+	private float x, y, vx, vy, rot, omega, invMass = 1;
+	private int state;
+	private GameSprite sprite;
+
+	/**
+	 * Called by the logic once this object has been given a row
+	 * 
+	 * @param components
+	 */
+	public final void attach(Components components) {
+		this.components = components;
+		int r = row();
+		if (r >= 0) {
+			components.setPosition(r, x, y);
+			components.setVelocity(r, vx, vy);
+			components.setRotation(r, rot);
+			components.setAngularVelocity(r, omega);
+			components.setInverseMass(r, invMass);
+			components.setAliveState(r, state);
+			components.setSprite(r, sprite);
+		}
+		attached();
+	}
+
+	/**
+	 * Called by the logic just before the row of this object is removed, so
+	 * that it keeps its last state
+	 */
+	public final void detach() {
+		int r = row();
+		if (r >= 0) {
+			x = components.getX(r);
+			y = components.getY(r);
+			vx = components.getVelocityX(r);
+			vy = components.getVelocityY(r);
+			rot = components.getRotation(r);
+			omega = components.getAngularVelocity(r);
+			invMass = components.getInverseMass(r);
+			state = components.getAliveState(r);
+			sprite = components.getSprite(r);
+		}
+		components = null;
+	}
+
+	/**
+	 * Called once this object has been given a row, before its first cycle.
+	 * Subclasses should set their initial state here
+	 */
+	protected void attached() {}
+
+	/**
+	 * @return the row of this object, or -1 if it has none
+	 */
+	private int row() {
+		return components == null ? -1 : components.row(identify());
+	}
+
+	public float getX() {
+		int r = row();
+		return r >= 0 ? components.getX(r) : x;
+	}
+
+	public float getY() {
+		int r = row();
+		return r >= 0 ? components.getY(r) : y;
+	}
+
+	public float getVelocityX() {
+		int r = row();
+		return r >= 0 ? components.getVelocityX(r) : vx;
+	}
+
+	public float getVelocityY() {
+		int r = row();
+		return r >= 0 ? components.getVelocityY(r) : vy;
+	}
+
+	public float getRotation() {
+		int r = row();
+		return r >= 0 ? components.getRotation(r) : rot;
+	}
+
+	public float getAngularVelocity() {
+		int r = row();
+		return r >= 0 ? components.getAngularVelocity(r) : omega;
+	}
+
+	public float getInverseMass() {
+		int r = row();
+		return r >= 0 ? components.getInverseMass(r) : invMass;
+	}
+
+	public void setPosition(float x, float y) {
+		int r = row();
+		if (r >= 0) {
+			components.setPosition(r, x, y);
+		} else {
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	public void setVelocity(float vx, float vy) {
+		int r = row();
+		if (r >= 0) {
+			components.setVelocity(r, vx, vy);
+		} else {
+			this.vx = vx;
+			this.vy = vy;
+		}
+	}
+
+	public void setRotation(float rot) {
+		int r = row();
+		if (r >= 0) {
+			components.setRotation(r, rot);
+		} else {
+			this.rot = rot;
+		}
+	}
+
+	public void setAngularVelocity(float omega) {
+		int r = row();
+		if (r >= 0) {
+			components.setAngularVelocity(r, omega);
+		} else {
+			this.omega = omega;
+		}
+	}
+
+	/**
+	 * @param invMass
+	 *                    the inverse of the mass, or zero for an object which can
+	 *                    not be pushed
+	 */
+	public void setInverseMass(float invMass) {
+		int r = row();
+		if (r >= 0) {
+			components.setInverseMass(r, invMass);
+		} else {
+			this.invMass = invMass;
+		}
+	}
+
+	public void setAliveState(@Logic.AliveState int state) {
+		int r = row();
+		if (r >= 0) {
+			components.setAliveState(r, state);
+		} else {
+			this.state = state;
+		}
+	}
+
+	public void setSprite(GameSprite sprite) {
+		int r = row();
+		if (r >= 0) {
+			components.setSprite(r, sprite);
+		} else {
+			this.sprite = sprite;
+		}
+	}
+
+	@Override
+	public @Logic.AliveState int getAliveState() {
+		int r = row();
+		return r >= 0 ? components.getAliveState(r) : state;
+	}
+
+	@Override
+	public GameSprite getCurrentSprite() {
+		int r = row();
+		return r >= 0 ? components.getSprite(r) : sprite;
+	}
+
+}
@@ -1,5 +1,6 @@
 package game2d.objects;
 
+import game2d.engine.CommandBuffer;
 import game2d.engine.CycleReturn;
 import game2d.engine.Logic;
 import game2d.engine.Settings;
@@ -7,13 +8,13 @@ import game2d.sprites.GameSprite;
 
 public class GameObject {
 
-	private char id = Logic.UNAWAKENED_ID;
+	private int id = Logic.UNAWAKENED_ID;
 
-	public final void identify(char id) {
+	public final void identify(int id) {
 		this.id = id;
 	}
 
-	public final char identify() {
+	public final int identify() {
 		return id;
 	}
 
@@ -29,10 +30,40 @@ public class GameObject {
 		return null;
 	}
 
+	/**
+	 * @return the number of cycles the logic should leave this object asleep for
+	 *         once it reports {@link Logic.ObjectState#ASLEEP}, or 0 to leave it
+	 *         asleep until it is woken
+	 */
+	public int getSleepCycles() {
+		return 0;
+	}
+
+	/**
+	 * Called when the logic wakes this object, after which it should no longer
+	 * report {@link Logic.ObjectState#ASLEEP}
+	 */
+	public void wake(Settings setting) {}
+
 	public CycleReturn cycle(Settings setting) {
 		return null;
 	}
 
+	/**
+	 * Cycles this object, writing what it wishes to affect the game into a
+	 * buffer owned by the logic
+	 * <p>
+	 * Adapts the {@link CycleReturn} of {@link #cycle(Settings)} by default.
+	 * Objects which override this instead produce no garbage when cycled
+	 * 
+	 * @param setting
+	 * @param commands
+	 */
+	public void cycle(Settings setting, CommandBuffer commands) {
+		CycleReturn c = cycle(setting);
+		if (c != null) commands.add(c);
+	}
+
 	public GameSprite getCurrentSprite() {
 		return null;
 	}
@@ -0,0 +1,69 @@
+package game2d.physics;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays list of axis aligned bounding boxes
+ * 
+ * @author Gareth Kmet
+ */
+public final class Bounds {
+
+	public float[] minX = new float[64], minY = new float[64], maxX = new float[64], maxY = new float[64];
+
+	/**
+	 * Per box, an id which stays with the same box across calls to a
+	 * {@link Broadphase} even when the boxes are added in another order
+	 */
+	public int[] ids = new int[64];
+
+	private int size = 0;
+
+	/**
+	 * Adds a box whose id is its index
+	 * 
+	 * @return the index of the new box
+	 */
+	public int add(float minX, float minY, float maxX, float maxY) {
+		return add(size, minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * @param  id
+	 *                the id of the box, unique among the boxes
+	 * 
+	 * @return    the index of the new box
+	 */
+	public int add(int id, float minX, float minY, float maxX, float maxY) {
+		if (size == this.minX.length) {
+			int length = size * 2;
+			this.ids = Arrays.copyOf(this.ids, length);
+			this.minX = Arrays.copyOf(this.minX, length);
+			this.minY = Arrays.copyOf(this.minY, length);
+			this.maxX = Arrays.copyOf(this.maxX, length);
+			this.maxY = Arrays.copyOf(this.maxY, length);
+		}
+		this.ids[size] = id;
+		this.minX[size] = minX;
+		this.minY[size] = minY;
+		this.maxX[size] = maxX;
+		this.maxY[size] = maxY;
+		return size++;
+	}
+
+	/**
+	 * @return if the boxes at two indices overlap
+	 */
+	public boolean overlaps(int a, int b) {
+		return minX[a] <= maxX[b] && minX[b] <= maxX[a] && minY[a] <= maxY[b] && minY[b] <= maxY[a];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+}
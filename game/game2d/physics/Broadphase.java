@@ -0,0 +1,304 @@
+package game2d.physics;
+
+import java.util.Arrays;
+
+/**
+ * Finds the pairs of bounding boxes which may collide
+ * <p>
+ * Also contains static subclasses which are the available broadphases
+ * 
+ * @author Gareth Kmet
+ */
+public interface Broadphase {
+
+	/**
+	 * Adds every pair of overlapping boxes to a buffer exactly once
+	 * 
+	 * @param bounds
+	 *                   the boxes
+	 * @param pairs
+	 *                   the buffer to add the pairs of indices into
+	 */
+	public void collide(Bounds bounds, PairBuffer pairs);
+
+	/**
+	 * Tests every pair of boxes
+	 * <p>
+	 * Quadratic in the number of boxes, only useful as a reference
+	 * 
+	 * @author Gareth Kmet
+	 */
+	public final class Naive implements Broadphase {
+
+		@Override
+		public void collide(Bounds bounds, PairBuffer pairs) {
+			int n = bounds.size();
+			for (int i = 0; i < n; i++) {
+				for (int j = i + 1; j < n; j++) { if (bounds.overlaps(i, j)) pairs.add(i, j); }
+			}
+		}
+
+	}
+
+	/**
+	 * Hashes boxes into a uniform grid of cells and only tests the boxes which
+	 * share a cell
+	 * <p>
+	 * A pair sharing several cells is only reported by the cell containing the
+	 * lower corner of their intersection. Near linear as long as the cells are
+	 * about the size of a typical box. Boxes wider or taller than
+	 * {@link #LARGE} cells, including infinite ones, are not hashed but tested
+	 * against every box, like the large sprites of a sprite index
+	 * 
+	 * @author Gareth Kmet
+	 */
+	public final class UniformGrid implements Broadphase {
+
+		private static final int CELL_BITS = 20, INDEX_BITS = 24;
+		private static final long CELL_MASK = (1L << CELL_BITS) - 1, INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+		/**
+		 * Boxes larger than this many cells along an axis are tested against
+		 * every box
+		 */
+		public static final int LARGE = 4;
+
+		private final float cellSize;
+		private final float inverseCellSize;
+
+		/**
+		 * Entries of a cell key and a box index, sorted so that the entries of a
+		 * cell are contiguous
+		 */
+		private long[] entries = new long[256];
+
+		/**
+		 * The indices of the boxes too large to hash, in ascending order
+		 */
+		private int[] large = new int[16];
+
+		/**
+		 * @param cellSize
+		 *                     the width and height of a cell
+		 */
+		public UniformGrid(float cellSize) {
+			this.cellSize = cellSize;
+			this.inverseCellSize = 1 / cellSize;
+		}
+
+		@Override
+		public void collide(Bounds bounds, PairBuffer pairs) {
+			int n = bounds.size();
+			int size = 0, largeSize = 0;
+			float limit = cellSize * LARGE;
+			for (int i = 0; i < n; i++) {
+				// also catches infinite and NaN bounds
+				if (!(bounds.maxX[i] - bounds.minX[i] <= limit && bounds.maxY[i] - bounds.minY[i] <= limit)) {
+					if (largeSize == large.length) large = Arrays.copyOf(large, largeSize * 2);
+					large[largeSize++] = i;
+					continue;
+				}
+				int cx0 = cell(bounds.minX[i]), cx1 = cell(bounds.maxX[i]);
+				int cy0 = cell(bounds.minY[i]), cy1 = cell(bounds.maxY[i]);
+				int cells = (cx1 - cx0 + 1) * (cy1 - cy0 + 1);
+				if (size + cells > entries.length) {
+					entries = Arrays.copyOf(entries, Math.max(size + cells, entries.length * 2));
+				}
+				for (int cx = cx0; cx <= cx1; cx++) {
+					for (int cy = cy0; cy <= cy1; cy++) { entries[size++] = key(cx, cy) << INDEX_BITS | i; }
+				}
+			}
+
+			Arrays.sort(entries, 0, size);
+
+			int start = 0;
+			while (start < size) {
+				long cell = entries[start] >>> INDEX_BITS;
+				int end = start + 1;
+				while (end < size && entries[end] >>> INDEX_BITS == cell) end++;
+
+				for (int p = start; p < end; p++) {
+					int a = (int) (entries[p] & INDEX_MASK);
+					for (int q = p + 1; q < end; q++) {
+						int b = (int) (entries[q] & INDEX_MASK);
+						if (!bounds.overlaps(a, b)) continue;
+						float x = Math.max(bounds.minX[a], bounds.minX[b]);
+						float y = Math.max(bounds.minY[a], bounds.minY[b]);
+						if (key(cell(x), cell(y)) == cell) pairs.add(a, b);
+					}
+				}
+				start = end;
+			}
+
+			for (int l = 0; l < largeSize; l++) {
+				int a = large[l];
+				int skip = 0;
+				for (int b = 0; b < n; b++) {
+					// the pairs of two large boxes are tested below
+					if (skip < largeSize && large[skip] == b) {
+						skip++;
+						continue;
+					}
+					if (bounds.overlaps(a, b)) pairs.add(a, b);
+				}
+				for (int m = l + 1; m < largeSize; m++) { if (bounds.overlaps(a, large[m])) pairs.add(a, large[m]); }
+			}
+		}
+
+		private int cell(float f) {
+			return (int) Math.floor(f * inverseCellSize);
+		}
+
+		private static long key(int cx, int cy) {
+			return (cx & CELL_MASK) << CELL_BITS | (cy & CELL_MASK);
+		}
+
+		public float getCellSize() {
+			return cellSize;
+		}
+
+	}
+
+	/**
+	 * Sorts the boxes along the x-axis and sweeps over them, only testing boxes
+	 * whose x-extents overlap
+	 * <p>
+	 * The order is kept between calls by the {@link Bounds#ids} of the boxes
+	 * and re-sorted with an insertion sort, so a scene whose boxes move little
+	 * between calls sorts in near linear time. When boxes were added or removed,
+	 * or the insertion sort moves too many boxes, the boxes are sorted afresh
+	 * 
+	 * @author Gareth Kmet
+	 */
+	public final class SweepAndPrune implements Broadphase {
+
+		/**
+		 * The insertion sort gives up once it has moved the boxes this many
+		 * places each on average
+		 */
+		private static final int SHIFTS = 8;
+
+		/**
+		 * The ids of the boxes in the order sorted by the last call
+		 */
+		private int[] order = new int[64];
+		private int orderSize = 0;
+
+		/**
+		 * The indices of the boxes, in the order being sorted
+		 */
+		private int[] sorted = new int[64];
+
+		/**
+		 * Open addressing table from the id of a box to its index plus one, or 0
+		 */
+		private int[] tableIds = new int[128], tableIndices = new int[128];
+
+		/**
+		 * The sortable bits of the minimum x and the index of each box
+		 */
+		private long[] keys = new long[64];
+
+		@Override
+		public void collide(Bounds bounds, PairBuffer pairs) {
+			int n = bounds.size();
+			if (sorted.length < n) {
+				int length = Math.max(n, sorted.length * 2);
+				sorted = new int[length];
+				order = Arrays.copyOf(order, length);
+			}
+
+			if (!reorder(bounds, n) || !insertionSort(bounds.minX, n)) sort(bounds.minX, n);
+			for (int i = 0; i < n; i++) order[i] = bounds.ids[sorted[i]];
+			orderSize = n;
+
+			float[] minX = bounds.minX, maxX = bounds.maxX;
+			for (int i = 0; i < n; i++) {
+				int a = sorted[i];
+				float max = maxX[a];
+				for (int j = i + 1; j < n; j++) {
+					int b = sorted[j];
+					if (minX[b] > max) break;
+					if (bounds.minY[a] <= bounds.maxY[b] && bounds.minY[b] <= bounds.maxY[a]) pairs.add(a, b);
+				}
+			}
+		}
+
+		/**
+		 * Places the indices of the boxes in the order of the last call
+		 * 
+		 * @return if the boxes have the same ids as on the last call
+		 */
+		private boolean reorder(Bounds bounds, int n) {
+			if (n != orderSize) return false;
+
+			int capacity = Integer.highestOneBit(Math.max(n, 32) * 2 - 1) * 2;
+			if (tableIds.length != capacity) {
+				tableIds = new int[capacity];
+				tableIndices = new int[capacity];
+			} else {
+				Arrays.fill(tableIndices, 0);
+			}
+			int mask = capacity - 1;
+			for (int i = 0; i < n; i++) {
+				int id = bounds.ids[i];
+				int h = hash(id) & mask;
+				while (tableIndices[h] != 0) h = (h + 1) & mask;
+				tableIds[h] = id;
+				tableIndices[h] = i + 1;
+			}
+			for (int i = 0; i < n; i++) {
+				int id = order[i];
+				int h = hash(id) & mask;
+				while (tableIndices[h] != 0 && tableIds[h] != id) h = (h + 1) & mask;
+				if (tableIndices[h] == 0) return false;
+				sorted[i] = tableIndices[h] - 1;
+			}
+			return true;
+		}
+
+		/**
+		 * Sorts the boxes by their minimum x from the order of the last call
+		 * 
+		 * @return if the boxes were sorted before moving too many
+		 */
+		private boolean insertionSort(float[] minX, int n) {
+			long shifts = (long) n * SHIFTS;
+			for (int i = 1; i < n; i++) {
+				int o = sorted[i];
+				float m = minX[o];
+				int j = i - 1;
+				while (j >= 0 && minX[sorted[j]] > m) {
+					sorted[j + 1] = sorted[j];
+					j--;
+					if (--shifts < 0) return false;
+				}
+				sorted[j + 1] = o;
+			}
+			return true;
+		}
+
+		/**
+		 * Sorts the boxes by their minimum x from scratch
+		 */
+		private void sort(float[] minX, int n) {
+			if (keys.length < n) keys = new long[Math.max(n, keys.length * 2)];
+			for (int i = 0; i < n; i++) {
+				// flips the magnitude bits of negative floats so that they
+				// compare as ints in the same order
+				int bits = Float.floatToIntBits(minX[i]);
+				bits ^= (bits >> 31) & Integer.MAX_VALUE;
+				keys[i] = (long) bits << 32 | i;
+			}
+			Arrays.sort(keys, 0, n);
+			for (int i = 0; i < n; i++) sorted[i] = (int) keys[i];
+		}
+
+		private static int hash(int id) {
+			int h = id * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+	}
+
+}
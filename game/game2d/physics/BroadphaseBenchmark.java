@@ -0,0 +1,86 @@
+package game2d.physics;
+
+import java.util.Random;
+
+/**
+ * Compares the {@link Broadphase}s on random boxes
+ * <p>
+ * Checks that every broadphase finds the same number of pairs as
+ * {@link Broadphase.Naive} and prints the time each takes on its first call,
+ * the best time of repeated calls on the same boxes and the time of a call
+ * after one more box was added. Run with the numbers of boxes to test as
+ * arguments
+ * 
+ * @author Gareth Kmet
+ */
+public final class BroadphaseBenchmark {
+
+	/**
+	 * No initializing
+	 */
+	private BroadphaseBenchmark() {}
+
+	private static final int RUNS = 10;
+
+	/**
+	 * The naive broadphase is skipped above this many boxes
+	 */
+	private static final int NAIVE_LIMIT = 20000;
+
+	public static void main(String[] args) {
+		int[] counts = args.length == 0 ? new int[] { 1000, 10000, 100000 } : new int[args.length];
+		for (int i = 0; i < args.length; i++) counts[i] = Integer.parseInt(args[i]);
+
+		for (int n : counts) {
+			System.out.println(n + " boxes");
+			System.out.printf("  %-16s %14s %10s %10s %10s%n", "", "", "cold", "best", "spawn");
+			int expected = n <= NAIVE_LIMIT ? run("naive", new Broadphase.Naive(), n, -1) : -1;
+			run("uniform grid", new Broadphase.UniformGrid(2), n, expected);
+			run("sweep and prune", new Broadphase.SweepAndPrune(), n, expected);
+		}
+	}
+
+	/**
+	 * @return boxes between 0.2 and 1.2 wide spread so that each overlaps a few
+	 *         others on average
+	 */
+	private static Bounds random(int n, Random random) {
+		Bounds bounds = new Bounds();
+		float extent = (float) Math.sqrt(n) * 2;
+		for (int i = 0; i < n; i++) add(bounds, extent, random);
+		return bounds;
+	}
+
+	private static void add(Bounds bounds, float extent, Random random) {
+		float x = random.nextFloat() * extent, y = random.nextFloat() * extent;
+		float w = 0.2f + random.nextFloat(), h = 0.2f + random.nextFloat();
+		bounds.add(x, y, x + w, y + h);
+	}
+
+	/**
+	 * @return the number of pairs before the box was added
+	 */
+	private static int run(String name, Broadphase broadphase, int n, int expected) {
+		Random random = new Random(n);
+		Bounds bounds = random(n, random);
+		PairBuffer pairs = new PairBuffer();
+		long cold = time(broadphase, bounds, pairs);
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < RUNS; r++) best = Math.min(best, time(broadphase, bounds, pairs));
+		int found = pairs.size();
+
+		add(bounds, (float) Math.sqrt(n) * 2, random);
+		long spawn = time(broadphase, bounds, pairs);
+		System.out.printf("  %-16s %8d pairs %10.3f %10.3f %10.3f ms%s%n", name, found, cold / 1e6, best / 1e6,
+				spawn / 1e6, expected >= 0 && expected != found ? "  MISMATCH" : "");
+		return found;
+	}
+
+	private static long time(Broadphase broadphase, Bounds bounds, PairBuffer pairs) {
+		pairs.clear();
+		long start = System.nanoTime();
+		broadphase.collide(bounds, pairs);
+		return System.nanoTime() - start;
+	}
+
+}
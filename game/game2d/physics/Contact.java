@@ -0,0 +1,77 @@
+package game2d.physics;
+
+/**
+ * The cached result of testing a pair of bodies, kept between cycles
+ * <p>
+ * While the bodies are apart, remembers the axis which separated them so that
+ * it can be tested first on the next cycle. While they overlap, holds the
+ * contact manifold and the impulse accumulated by the solver for warm starting
+ * 
+ * @author Gareth Kmet
+ */
+public final class Contact {
+
+	final int a, b;
+
+	/**
+	 * The separating axis, the edge <code>axisEdge</code> of body a if
+	 * <code>axisOwner</code> is 0 or of body b if it is 1, or -1 if none is
+	 * known
+	 */
+	int axisOwner = -1, axisEdge;
+
+	boolean touching = false;
+
+	float normalX, normalY, depth, pointX, pointY;
+
+	/**
+	 * The impulse applied along the normal on the last cycle
+	 */
+	float impulse = 0;
+
+	long cycle;
+
+	Contact(int a, int b) {
+		this.a = a;
+		this.b = b;
+	}
+
+	/**
+	 * @return the id of the first body
+	 */
+	public int getA() { return a; }
+
+	/**
+	 * @return the id of the second body
+	 */
+	public int getB() { return b; }
+
+	/**
+	 * @return if the bodies overlapped on the last test
+	 */
+	public boolean isTouching() { return touching; }
+
+	/**
+	 * @return the x component of the unit normal pointing from body a to body b
+	 */
+	public float getNormalX() { return normalX; }
+
+	/**
+	 * @return the y component of the unit normal pointing from body a to body b
+	 */
+	public float getNormalY() { return normalY; }
+
+	/**
+	 * @return the distance the bodies overlap along the normal
+	 */
+	public float getDepth() { return depth; }
+
+	public float getPointX() { return pointX; }
+
+	public float getPointY() { return pointY; }
+
+	public float getImpulse() { return impulse; }
+
+	public void setImpulse(float impulse) { this.impulse = impulse; }
+
+}
@@ -0,0 +1,140 @@
+package game2d.physics;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * The convex hull of a {@link Shape}, flattened into a polygon once so that it
+ * can be cheaply transformed and tested every cycle
+ * <p>
+ * A concave shape collides as its convex hull
+ * 
+ * @author Gareth Kmet
+ */
+public final class ConvexPolygon {
+
+	/**
+	 * The maximum distance between a curve of a shape and the polygon, as a
+	 * proportion of the diagonal of the bounds of the shape
+	 */
+	private static final double FLATNESS = 0.02;
+
+	private final float[] x, y;
+
+	private ConvexPolygon(float[] x, float[] y) {
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * @param  shape
+	 * 
+	 * @return       the convex hull of the flattened outline of the shape
+	 */
+	public static ConvexPolygon of(Shape shape) {
+		double[] points = new double[64];
+		int n = 0;
+		double[] coords = new double[6];
+		Rectangle2D bounds = shape.getBounds2D();
+		double flatness = FLATNESS * Math.hypot(bounds.getWidth(), bounds.getHeight());
+		for (PathIterator i = shape.getPathIterator(null, flatness); !i.isDone(); i.next()) {
+			if (i.currentSegment(coords) == PathIterator.SEG_CLOSE) continue;
+			if (n * 2 == points.length) points = Arrays.copyOf(points, points.length * 2);
+			points[n * 2] = coords[0];
+			points[n * 2 + 1] = coords[1];
+			n++;
+		}
+		return hull(points, n);
+	}
+
+	/**
+	 * Andrew's monotone chain
+	 */
+	private static ConvexPolygon hull(double[] points, int n) {
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) order[i] = i;
+		Arrays.sort(order, (a, b) -> {
+			int c = Double.compare(points[a * 2], points[b * 2]);
+			return c != 0 ? c : Double.compare(points[a * 2 + 1], points[b * 2 + 1]);
+		});
+
+		int[] hull = new int[n * 2 + 1];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			while (k >= 2 && cross(points, hull[k - 2], hull[k - 1], order[i]) <= 0) k--;
+			hull[k++] = order[i];
+		}
+		for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+			while (k >= lower && cross(points, hull[k - 2], hull[k - 1], order[i]) <= 0) k--;
+			hull[k++] = order[i];
+		}
+		int size = Math.max(0, k - 1);
+		if (n == 1) size = 1;
+
+		float[] x = new float[size], y = new float[size];
+		for (int i = 0; i < size; i++) {
+			x[i] = (float) points[hull[i] * 2];
+			y[i] = (float) points[hull[i] * 2 + 1];
+		}
+		return new ConvexPolygon(x, y);
+	}
+
+	private static double cross(double[] p, int o, int a, int b) {
+		return (p[a * 2] - p[o * 2]) * (p[b * 2 + 1] - p[o * 2 + 1])
+				- (p[a * 2 + 1] - p[o * 2 + 1]) * (p[b * 2] - p[o * 2]);
+	}
+
+	/**
+	 * @return the number of vertices
+	 */
+	public int size() {
+		return x.length;
+	}
+
+	/**
+	 * Writes the vertices under a transform into two arrays
+	 * 
+	 * @param t
+	 * @param dstX
+	 * @param dstY
+	 * @param offset
+	 *                   the index of the first vertex in the arrays
+	 */
+	public void transform(AffineTransform t, float[] dstX, float[] dstY, int offset) {
+		double m00 = t.getScaleX(), m01 = t.getShearX(), m02 = t.getTranslateX();
+		double m10 = t.getShearY(), m11 = t.getScaleY(), m12 = t.getTranslateY();
+		for (int i = 0; i < x.length; i++) {
+			dstX[offset + i] = (float) (m00 * x[i] + m01 * y[i] + m02);
+			dstY[offset + i] = (float) (m10 * x[i] + m11 * y[i] + m12);
+		}
+	}
+
+	/**
+	 * Writes the unit normal of the edge starting at each vertex of a
+	 * transformed polygon
+	 * 
+	 * @param x
+	 *                   the x coordinates written by {@link #transform}
+	 * @param y
+	 *                   the y coordinates written by {@link #transform}
+	 * @param dstX
+	 * @param dstY
+	 * @param offset
+	 *                   the index of the first vertex in the arrays
+	 */
+	public void normals(float[] x, float[] y, float[] dstX, float[] dstY, int offset) {
+		int n = this.x.length;
+		for (int i = 0; i < n; i++) {
+			int a = offset + i, b = offset + (i + 1) % n;
+			float nx = y[b] - y[a], ny = x[a] - x[b];
+			float length = (float) Math.sqrt(nx * nx + ny * ny);
+			if (length == 0) length = 1;
+			dstX[a] = nx / length;
+			dstY[a] = ny / length;
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+package game2d.physics;
+
+/**
+ * Exact overlap tests between convex polygons using the separating axis
+ * theorem
+ * <p>
+ * The polygons are given in world space as ranges of two coordinate arrays.
+ * A {@link Contact} is cached for each pair of bodies between cycles so that a
+ * pair which stays apart is usually rejected by its last separating axis alone
+ * 
+ * @author Gareth Kmet
+ */
+public final class Narrowphase {
+
+	/**
+	 * Open addressed table of the cached contacts keyed by the ids of both
+	 * bodies, avoids boxing a key for every pair tested
+	 */
+	private long[] keys = new long[1024];
+	private Contact[] contacts = new Contact[1024];
+	private int size = 0;
+
+	private long cycle = 0;
+
+	/**
+	 * Starts a new cycle, forgetting the contacts of pairs which were not
+	 * tested on the last cycle. The table is swept in place so that no garbage
+	 * is made while the number of pairs does not grow
+	 */
+	public void begin() {
+		long last = cycle++;
+		for (int i = 0; i < contacts.length;) {
+			Contact c = contacts[i];
+			// a removal may shift another contact into this slot, so test it again
+			if (c != null && c.cycle < last) {
+				remove(i);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Grows the table, keeping every contact
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Contact[] oldContacts = contacts;
+		keys = new long[capacity];
+		contacts = new Contact[capacity];
+		size = 0;
+		for (int i = 0; i < oldContacts.length; i++) {
+			if (oldContacts[i] != null) put(oldKeys[i], oldContacts[i]);
+		}
+	}
+
+	/**
+	 * Empties a slot, shifting back the contacts after it which could no longer
+	 * be found past the gap
+	 */
+	private void remove(int i) {
+		int mask = keys.length - 1;
+		contacts[i] = null;
+		size--;
+		for (int j = (i + 1) & mask; contacts[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			// the contact may stay only if its home lies cyclically in (i, j]
+			boolean stays = i <= j ? i < home && home <= j : i < home || home <= j;
+			if (stays) continue;
+			keys[i] = keys[j];
+			contacts[i] = contacts[j];
+			contacts[j] = null;
+			i = j;
+		}
+	}
+
+	private void put(long key, Contact c) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (contacts[i] != null) i = (i + 1) & mask;
+		keys[i] = key;
+		contacts[i] = c;
+		size++;
+	}
+
+	private Contact get(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; contacts[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) return contacts[i];
+		}
+		return null;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ h >>> 32);
+	}
+
+	/**
+	 * Tests two polygons
+	 * 
+	 * @param  a
+	 *                the id of the first body
+	 * @param  b
+	 *                the id of the second body
+	 * @param  x
+	 *                the x coordinates of the vertices of both polygons
+	 * @param  y
+	 *                the y coordinates of the vertices of both polygons
+	 * @param  nx
+	 *                the x components of the unit normal of the edge starting
+	 *                at each vertex
+	 * @param  ny
+	 *                the y components of the unit normal of the edge starting
+	 *                at each vertex
+	 * @param  aStart
+	 *                the index of the first vertex of the first polygon
+	 * @param  aSize
+	 *                the number of vertices of the first polygon
+	 * @param  bStart
+	 *                the index of the first vertex of the second polygon
+	 * @param  bSize
+	 *                the number of vertices of the second polygon
+	 * 
+	 * @return        the cached contact of the pair, which is touching if the
+	 *                polygons overlap
+	 */
+	public Contact collide(int a, int b, float[] x, float[] y, float[] nx, float[] ny, int aStart, int aSize,
+			int bStart, int bSize) {
+		long key = (long) a << 32 | (b & 0xFFFFFFFFL);
+		Contact c = get(key);
+		if (c == null) {
+			if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+			c = new Contact(a, b);
+			put(key, c);
+		}
+		c.cycle = cycle;
+
+		if (aSize < 2 || bSize < 2) {
+			c.touching = false;
+			return c;
+		}
+
+		if (!c.touching && c.axisOwner >= 0) {
+			int start = c.axisOwner == 0 ? aStart : bStart, size = c.axisOwner == 0 ? aSize : bSize;
+			int e = start + c.axisEdge;
+			if (c.axisEdge < size && overlap(x, y, nx[e], ny[e], aStart, aSize, bStart, bSize) < 0) { return c; }
+		}
+
+		float best = Float.MAX_VALUE, bx = 0, by = 0;
+		for (int owner = 0; owner < 2; owner++) {
+			int start = owner == 0 ? aStart : bStart, size = owner == 0 ? aSize : bSize;
+			for (int e = 0; e < size; e++) {
+				float o = overlap(x, y, nx[start + e], ny[start + e], aStart, aSize, bStart, bSize);
+				if (o < 0) {
+					c.touching = false;
+					c.axisOwner = owner;
+					c.axisEdge = e;
+					c.impulse = 0;
+					return c;
+				}
+				if (o < best) {
+					best = o;
+					bx = nx[start + e];
+					by = ny[start + e];
+				}
+			}
+		}
+
+		float dx = centroid(x, bStart, bSize) - centroid(x, aStart, aSize);
+		float dy = centroid(y, bStart, bSize) - centroid(y, aStart, aSize);
+		if (dx * bx + dy * by < 0) {
+			bx = -bx;
+			by = -by;
+		}
+
+		int support = bStart;
+		float min = Float.MAX_VALUE;
+		for (int i = bStart; i < bStart + bSize; i++) {
+			float d = x[i] * bx + y[i] * by;
+			if (d < min) {
+				min = d;
+				support = i;
+			}
+		}
+
+		c.touching = true;
+		c.axisOwner = -1;
+		c.normalX = bx;
+		c.normalY = by;
+		c.depth = best;
+		c.pointX = x[support];
+		c.pointY = y[support];
+		return c;
+	}
+
+	/**
+	 * @return the overlap of the projections of both polygons onto an axis,
+	 *         negative if they are separated
+	 */
+	private static float overlap(float[] x, float[] y, float nx, float ny, int aStart, int aSize, int bStart,
+			int bSize) {
+		float minA = Float.MAX_VALUE, maxA = -Float.MAX_VALUE;
+		for (int k = aStart; k < aStart + aSize; k++) {
+			float d = x[k] * nx + y[k] * ny;
+			minA = Math.min(minA, d);
+			maxA = Math.max(maxA, d);
+		}
+		float minB = Float.MAX_VALUE, maxB = -Float.MAX_VALUE;
+		for (int k = bStart; k < bStart + bSize; k++) {
+			float d = x[k] * nx + y[k] * ny;
+			minB = Math.min(minB, d);
+			maxB = Math.max(maxB, d);
+		}
+		return Math.min(maxA, maxB) - Math.max(minA, minB);
+	}
+
+	private static float centroid(float[] c, int start, int size) {
+		float sum = 0;
+		for (int i = start; i < start + size; i++) sum += c[i];
+		return sum / size;
+	}
+
+	/**
+	 * @return the number of pairs currently cached
+	 */
+	public int size() {
+		return size;
+	}
+
+}
@@ -0,0 +1,44 @@
+package game2d.physics;
+
+import java.util.Arrays;
+
+/**
+ * Reusable list of pairs of indices, each stored with the smaller index first
+ * 
+ * @author Gareth Kmet
+ */
+public final class PairBuffer {
+
+	private int[] pairs = new int[128];
+	private int size = 0;
+
+	public void add(int a, int b) {
+		if (size * 2 == pairs.length) { pairs = Arrays.copyOf(pairs, pairs.length * 2); }
+		pairs[size * 2] = Math.min(a, b);
+		pairs[size * 2 + 1] = Math.max(a, b);
+		size++;
+	}
+
+	/**
+	 * @return the smaller index of a pair
+	 */
+	public int a(int i) {
+		return pairs[i * 2];
+	}
+
+	/**
+	 * @return the larger index of a pair
+	 */
+	public int b(int i) {
+		return pairs[i * 2 + 1];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+}
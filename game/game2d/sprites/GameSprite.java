@@ -5,6 +5,14 @@ import java.awt.geom.AffineTransform;
 public sealed class GameSprite permits ShapeSprite {
 
 	protected AffineTransform transform = AffineTransform.getScaleInstance(1, 1);
+	protected final AffineTransform previous = AffineTransform.getScaleInstance(1, 1);
+	protected int layer = 0;
+	private long version = 0;
+
+	/**
+	 * The matrix of the transform when the version last changed
+	 */
+	private double m00 = 1, m10 = 0, m01 = 0, m11 = 1, m02 = 0, m12 = 0;
 
 	public AffineTransform transformation() {
 		return transform;
@@ -14,6 +22,122 @@ public sealed class GameSprite permits ShapeSprite {
 	 * @param transform
 	 *                  the transform to set
 	 */
-	public void setTransform(AffineTransform transform) { this.transform = transform; }
+	public void setTransform(AffineTransform transform) {
+		this.transform = transform;
+		changed();
+	}
+
+	/**
+	 * Sets the matrix of the current transform in place, only changing the
+	 * version if the matrix differs
+	 */
+	public void setTransform(double m00, double m10, double m01, double m11, double m02, double m12) {
+		if (this.m00 != m00 || this.m10 != m10 || this.m01 != m01 || this.m11 != m11 || this.m02 != m02
+				|| this.m12 != m12 || differs()) {
+			transform.setTransform(m00, m10, m01, m11, m02, m12);
+			changed();
+		}
+	}
+
+	/**
+	 * Changes the version, as if the transform had been set
+	 */
+	public void transformChanged() { changed(); }
+
+	/**
+	 * Anything derived from the transform may be cached until this changes.
+	 * The transform returned by {@link #transformation()} may be changed in
+	 * place, so its matrix is compared with the one recorded when the version
+	 * last changed
+	 * 
+	 * @return a number which changes whenever the transform changes
+	 */
+	public long getTransformVersion() {
+		if (differs()) changed();
+		return version;
+	}
+
+	/**
+	 * @return if the matrix of the transform is not the one recorded
+	 */
+	private boolean differs() {
+		AffineTransform t = transform;
+		return t.getScaleX() != m00 || t.getShearY() != m10 || t.getShearX() != m01 || t.getScaleY() != m11
+				|| t.getTranslateX() != m02 || t.getTranslateY() != m12;
+	}
+
+	private void changed() {
+		AffineTransform t = transform;
+		m00 = t.getScaleX();
+		m10 = t.getShearY();
+		m01 = t.getShearX();
+		m11 = t.getScaleY();
+		m02 = t.getTranslateX();
+		m12 = t.getTranslateY();
+		version++;
+	}
+
+	/**
+	 * Sprites on a lower layer are drawn beneath those on a higher layer. Within
+	 * a layer overlapping sprites are drawn in the order they were added, while
+	 * sprites which do not overlap may be reordered
+	 * 
+	 * @return the layer
+	 */
+	public int getLayer() { return layer; }
+
+	/**
+	 * @param layer
+	 *                  the layer to set
+	 */
+	public void setLayer(int layer) { this.layer = layer; }
+
+	/**
+	 * @return the transform this sprite had at the end of the previous cycle
+	 */
+	public AffineTransform previousTransformation() { return previous; }
+
+	/**
+	 * Records the current transform as the transform of the previous cycle.
+	 * Called by the logic before the owning object is cycled
+	 */
+	public void storePrevious() { previous.setTransform(transform); }
+
+	/**
+	 * Linearly blends the matrix of the previous and current transforms
+	 * 
+	 * @param  alpha
+	 *                  the proportion of the current transform, between 0-1
+	 * @param  dst
+	 *                  the transform to write the result into
+	 * 
+	 * @return       <code>dst</code>
+	 */
+	public AffineTransform interpolate(double alpha, AffineTransform dst) {
+		return interpolate(previous, transform, alpha, dst);
+	}
+
+	/**
+	 * Linearly blends the matrix of two transforms
+	 * 
+	 * @param  from
+	 * @param  to
+	 * @param  alpha
+	 *                  the proportion of <code>to</code>, between 0-1
+	 * @param  dst
+	 *                  the transform to write the result into
+	 * 
+	 * @return       <code>dst</code>
+	 */
+	public static AffineTransform interpolate(AffineTransform from, AffineTransform to, double alpha,
+			AffineTransform dst) {
+		double b = 1 - alpha;
+		dst.setTransform(b * from.getScaleX() + alpha * to.getScaleX(),
+				b * from.getShearY() + alpha * to.getShearY(), b * from.getShearX() + alpha * to.getShearX(),
+				b * from.getScaleY() + alpha * to.getScaleY(),
+				b * from.getTranslateX() + alpha * to.getTranslateX(),
+				b * from.getTranslateY() + alpha * to.getTranslateY());
+		return dst;
+	}
 
 }
@@ -6,6 +6,11 @@ package game2d.sprites;
 import java.awt.Color;
 import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+
+import game2d.physics.ConvexPolygon;
 
 /**
  * @author Gareth Kmet
@@ -17,6 +22,14 @@ public final class ShapeSprite extends GameSprite {
 	private Stroke fstroke;
 	private Stroke ostroke;
 	private Shape shape;
+	private ConvexPolygon hull;
+	private int winding = 2;
+	private Rectangle2D bounds;
+
+	private final Rectangle2D.Double worldBounds = new Rectangle2D.Double();
+	private long boundsVersion = -1;
+	private Shape worldShape;
+	private long shapeVersion = -1;
 
 	/**
 	 * @param fcolor
@@ -61,4 +74,103 @@ public final class ShapeSprite extends GameSprite {
 	 */
 	public Shape getShape() { return this.shape; }
 
+	/**
+	 * @return the bounds of the untransformed shape, found on the first call,
+	 *         which must not be modified
+	 */
+	public Rectangle2D getBounds() {
+		if (bounds == null) bounds = shape.getBounds2D();
+		return bounds;
+	}
+
+	/**
+	 * @return the convex hull of the shape, flattened on the first call
+	 */
+	public ConvexPolygon getHull() {
+		if (hull == null) hull = ConvexPolygon.of(shape);
+		return hull;
+	}
+
+	/**
+	 * Shapes which wind the same way may be filled together as a single path
+	 * without their overlaps cancelling out
+	 * 
+	 * @return the sign of the area enclosed by the untransformed outline of the
+	 *         shape, or 0 if the shape is empty or uses the even-odd rule,
+	 *         found on the first call
+	 */
+	public int getWinding() {
+		if (winding == 2) {
+			PathIterator i = shape.getPathIterator(null, 0.02 * Math.hypot(getBounds().getWidth(),
+					getBounds().getHeight()));
+			double area = 0, mx = 0, my = 0, px = 0, py = 0;
+			double[] coords = new double[6];
+			boolean nonzero = i.getWindingRule() == PathIterator.WIND_NON_ZERO;
+			for (; !i.isDone(); i.next()) {
+				switch (i.currentSegment(coords)) {
+					case PathIterator.SEG_MOVETO -> {
+						area += px * my - mx * py;
+						mx = px = coords[0];
+						my = py = coords[1];
+					}
+					case PathIterator.SEG_LINETO -> {
+						area += px * coords[1] - coords[0] * py;
+						px = coords[0];
+						py = coords[1];
+					}
+					case PathIterator.SEG_CLOSE -> {
+						area += px * my - mx * py;
+						px = mx;
+						py = my;
+					}
+				}
+			}
+			area += px * my - mx * py;
+			winding = nonzero ? (int) Math.signum(area) : 0;
+		}
+		return winding;
+	}
+
+	/**
+	 * A conservative bounding box of the shape under the transform of this
+	 * sprite, found by transforming the corners of the bounds of the shape and
+	 * kept until the transform changes
+	 * 
+	 * @param  dst
+	 *                 the rectangle to write the bounds into
+	 * 
+	 * @return     <code>dst</code>
+	 */
+	public Rectangle2D getWorldBounds(Rectangle2D dst) {
+		if (boundsVersion != getTransformVersion()) {
+			Rectangle2D b = getBounds();
+			AffineTransform t = transformation();
+			double m00 = t.getScaleX(), m01 = t.getShearX(), m10 = t.getShearY(), m11 = t.getScaleY();
+			double cx = b.getCenterX(), cy = b.getCenterY();
+			double hw = b.getWidth() / 2, hh = b.getHeight() / 2;
+
+			double x = m00 * cx + m01 * cy + t.getTranslateX();
+			double y = m10 * cx + m11 * cy + t.getTranslateY();
+			double ex = Math.abs(m00) * hw + Math.abs(m01) * hh;
+			double ey = Math.abs(m10) * hw + Math.abs(m11) * hh;
+
+			worldBounds.setRect(x - ex, y - ey, ex * 2, ey * 2);
+			boundsVersion = getTransformVersion();
+		}
+		dst.setRect(worldBounds);
+		return dst;
+	}
+
+	/**
+	 * @return the shape under the transform of this sprite, kept until the
+	 *         transform changes
+	 */
+	public Shape getWorldShape() {
+		if (shapeVersion != getTransformVersion()) {
+			worldShape = transformation().createTransformedShape(shape);
+			shapeVersion = getTransformVersion();
+		}
+		return worldShape;
+	}
+
 }